@@ -0,0 +1,282 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+// This class represents a bounded cache of classification results in front of a Classifier,
+//      for traffic where many messages are exactly the same text (like bulk spam). Results are
+//      keyed by a 128-bit hash of the raw text, computed in a single pass over its characters
+//      before any TextBlock is built, so a repeated message costs one hash and one lookup.
+// The cache is split into segments by hash, each with its own lock. Each segment evicts with a
+//      segmented LRU policy: new entries start out in a probation area and are only promoted to
+//      the protected area, which holds most of the entries, once they are hit again. A burst of
+//      messages seen only once therefore can't push the popular ones out.
+// Results are also keyed by the model, and the version of it, that computed them, so several
+//      models (or versions) can be served from the same cache at once, as while a registry
+//      swaps or rolls back models and calls still hold the old one. Results of a model that is
+//      no longer used, or of an old version of one, are never hit again and so are evicted as
+//      new results come in. Keys only hold a number for each model, so cached results don't
+//      keep models from being garbage collected.
+public class ClassificationCache {
+    // Most segments used; fewer are used for small caches so each keeps a useful size
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+    // Share of each segment's entries held by the protected area, in percent
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Segment[] segments;
+    // Number of every model the cache has seen, by identity, guarded by itself
+    private final Map<Classifier, Long> modelIds;
+    private long nextModelId;
+    // The Stamp last asked for, so calls with the same model don't look it up again
+    private volatile Stamp last;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder invalidations;
+
+    // Constructs a new empty ClassificationCache holding at most the given number of results
+    // Throws an IllegalArgumentException
+    //      If maxEntries is less than 1
+    public ClassificationCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException();
+        }
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS,
+                                                                maxEntries / MIN_SEGMENT_ENTRIES)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // Spread the remainder so the segments add up to exactly maxEntries
+            segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+        }
+        this.modelIds = new WeakHashMap<>();
+        this.last = new Stamp(null, -1, 0);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.invalidations = new LongAdder();
+    }
+
+    // Returns the label the given model predicts for the given raw text, from the cache if the
+    //      same text has been classified with the same version of the model before
+    // Throws an IllegalArgumentException
+    //      If the model or the text is null
+    public String classify(Classifier model, CharSequence text) {
+        if (model == null || text == null) {
+            throw new IllegalArgumentException();
+        }
+        Key key = new Key(text, stampFor(model));
+        Segment segment = segments[(int) key.high & (segments.length - 1)];
+        String label = segment.get(key);
+        if (label != null) {
+            hits.increment();
+            return label;
+        }
+        misses.increment();
+        label = model.classify(text);
+        evictions.add(segment.put(key, label));
+        return label;
+    }
+
+    // Drops every cached result
+    public void invalidate() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        invalidations.increment();
+    }
+
+    // Returns the number of results currently cached
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // Returns the number of lookups answered from the cache
+    public long hits() {
+        return hits.sum();
+    }
+
+    // Returns the number of lookups that had to classify the text
+    public long misses() {
+        return misses.sum();
+    }
+
+    // Returns the number of results evicted to stay within the size bound
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // Returns the number of times invalidate() dropped every result
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    // Returns the fraction of lookups answered from the cache, or 0 if there were none
+    public double hitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public String toString() {
+        return String.format("size %d, hits %d, misses %d (hit rate %.3f), evictions %d, " +
+                             "invalidations %d", size(), hits(), misses(), hitRate(),
+                             evictions(), invalidations());
+    }
+
+    // Helper method - returns the Stamp for the given model in its current version
+    private Stamp stampFor(Classifier model) {
+        long version = model.version();
+        Stamp current = last;
+        if (current.model != model || current.version != version) {
+            long id;
+            synchronized (modelIds) {
+                id = modelIds.computeIfAbsent(model, m -> nextModelId++);
+            }
+            current = new Stamp(model, id, version);
+            last = current;
+        }
+        return current;
+    }
+
+    // This class identifies the model version a result was computed with: the model, the
+    //      cache's number for it, and its version
+    private static class Stamp {
+        private final Classifier model;
+        private final long id;
+        private final long version;
+
+        private Stamp(Classifier model, long id, long version) {
+            this.model = model;
+            this.id = id;
+            this.version = version;
+        }
+    }
+
+    // This class is what results are cached by: the 128-bit hash of a text (plus its length),
+    //      whose two halves are computed by independent hash functions in the same pass, and the
+    //      number and version of the model that classified it
+    private static class Key {
+        private final long high;
+        private final long low;
+        private final int length;
+        private final long model;
+        private final long version;
+
+        private Key(CharSequence text, Stamp stamp) {
+            int length = text.length();
+            long h1 = 0x9E3779B97F4A7C15L ^ length;
+            long h2 = 0xC2B2AE3D27D4EB4FL + length;
+            // Four characters are packed into one long per step, the rest one at a time
+            int i = 0;
+            for (; i + 4 <= length; i += 4) {
+                long block = text.charAt(i) | (long) text.charAt(i + 1) << 16
+                             | (long) text.charAt(i + 2) << 32 | (long) text.charAt(i + 3) << 48;
+                h1 = Long.rotateLeft(h1 ^ block, 29) * 0x100000001B3L;
+                h2 = Long.rotateLeft(h2 + block * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+            }
+            for (; i < length; i++) {
+                char c = text.charAt(i);
+                h1 = Long.rotateLeft(h1 ^ c, 29) * 0x100000001B3L;
+                h2 = Long.rotateLeft(h2 + c * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+            }
+            this.high = mix(h1 ^ Long.rotateLeft(h2, 17));
+            this.low = mix(h2 ^ h1);
+            this.length = length;
+            this.model = stamp.id;
+            this.version = stamp.version;
+        }
+
+        // Helper method - scrambles all bits of the given hash (the MurmurHash3 finalizer)
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            return h ^ (h >>> 33);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return high == other.high && low == other.low && length == other.length
+                   && model == other.model && version == other.version;
+        }
+
+        public int hashCode() {
+            long h = low + 31 * (model * 31 + version);
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    // This class is one segment of the cache: a probation and a protected area, each kept in
+    //      least recently used order, behind one lock
+    private static class Segment {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<Key, String> probation;
+        private final LinkedHashMap<Key, String> protect;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = capacity * PROTECTED_PERCENT / 100;
+            this.probation = new LinkedHashMap<>(16, 0.75f, true);
+            this.protect = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        // Returns the cached label for the given key, or null if there is none. A hit in
+        //      probation promotes the entry to the protected area.
+        private synchronized String get(Key key) {
+            String label = protect.get(key);
+            if (label == null) {
+                label = probation.remove(key);
+                if (label == null) {
+                    return null;
+                }
+                protect.put(key, label);
+                if (protect.size() > protectedCapacity) {
+                    Map.Entry<Key, String> demoted = removeEldest(protect);
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+            return label;
+        }
+
+        // Caches the given label on probation, evicting the least recently used entries if the
+        //      segment is full. Returns the number of entries evicted.
+        private synchronized int put(Key key, String label) {
+            if (protect.containsKey(key)) {
+                protect.put(key, label);
+                return 0;
+            }
+            probation.put(key, label);
+            int evicted = 0;
+            while (probation.size() + protect.size() > capacity) {
+                removeEldest(probation.isEmpty() ? protect : probation);
+                evicted++;
+            }
+            return evicted;
+        }
+
+        private synchronized void clear() {
+            probation.clear();
+            protect.clear();
+        }
+
+        private synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        // Helper method - removes and returns the least recently used entry of the given area
+        private static Map.Entry<Key, String> removeEldest(LinkedHashMap<Key, String> area) {
+            Iterator<Map.Entry<Key, String>> eldest = area.entrySet().iterator();
+            Map.Entry<Key, String> entry = eldest.next();
+            eldest.remove();
+            return entry;
+        }
+    }
+}
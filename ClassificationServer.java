@@ -0,0 +1,186 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import com.sun.net.httpserver.*;
+
+// This class serves a Classifier over HTTP on the local machine. Each request to /classify is a
+//      POST whose body is the raw text to classify, and is answered with a small JSON object
+//      holding the predicted label and the time the server took to produce it:
+//
+//          {"label":"spam","latencyMicros":412}
+//
+// With metrics enabled (see Metrics), GET /metrics returns a snapshot of them in the Prometheus
+//      text format, or as JSON with ?format=json.
+// Requests are handled on virtual threads when the JVM has them (Java 21 and newer), and on a
+//      pool of platform threads otherwise. Concurrent requests are grouped into small batches by a
+//      MicroBatcher before they reach the Classifier.
+public class ClassificationServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final String PATH = "/classify";
+    public static final String METRICS_PATH = "/metrics";
+
+    // Defaults of the MicroBatcher in front of the Classifier
+    public static final int MAX_BATCH = 32;
+    public static final long MAX_DELAY_MICROS = 200;
+    // Longest a request waits for its label before it is answered with an error, so that no
+    //      request thread can be held forever
+    public static final long REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    static {
+        // Responses are tiny, so without TCP_NODELAY they would wait on the client's delayed ACK
+        //      (around 40 ms) before being sent. Must be set before the first HttpServer exists.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Classifier classifier;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final MicroBatcher batcher;
+
+    // Constructs a new ClassificationServer for the given Classifier, listening on the given port
+    //      of the loopback address once started. Port 0 picks any free port.
+    // Throws an IllegalArgumentException
+    //      If the classifier is null
+    // Throws an IOException
+    //      If the port can't be bound
+    public ClassificationServer(Classifier classifier, int port) throws IOException {
+        if (classifier == null) {
+            throw new IllegalArgumentException();
+        }
+        this.classifier = classifier;
+        this.batcher = new MicroBatcher(classifier, Runtime.getRuntime().availableProcessors(),
+                                        MAX_BATCH, MAX_DELAY_MICROS);
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                              port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext(PATH, this::handle);
+        this.server.createContext(METRICS_PATH, this::handleMetrics);
+    }
+
+    // Starts a ClassificationServer and serves until the JVM is stopped.
+    // Arguments: [model file] [port]. Model files ending in Client.BINARY_EXTENSION are loaded
+    //      as binary models, other files as text models. Without a model file, a model is
+    //      trained from Client.TRAIN_FILE.
+    // Throws an IOException
+    //      If the model can't be loaded or the port can't be bound
+    public static void main(String[] args) throws IOException {
+        Classifier c;
+        if (args.length > 0 && args[0].endsWith(Client.BINARY_EXTENSION)) {
+            c = Classifier.loadBinary(args[0]);
+        } else if (args.length > 0) {
+            c = new Classifier(new Scanner(new File(args[0]), StandardCharsets.UTF_8));
+        } else {
+            DataLoader loader = new DataLoader(Client.TRAIN_FILE, Client.LABEL_INDEX,
+                                               Client.CONTENT_INDEX);
+            c = new Classifier(loader.getData(), loader.getLabels());
+            c.freeze();
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+
+        ClassificationServer server = new ClassificationServer(c, port);
+        server.start();
+        System.out.println("Serving on http://localhost:" + server.getPort() + PATH);
+    }
+
+    // Starts accepting requests
+    public void start() {
+        server.start();
+    }
+
+    // Stops accepting requests, waiting at most the given number of seconds for requests in
+    //      progress to finish, then releases the threads of this server
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        batcher.close();
+        executor.shutdown();
+    }
+
+    // Returns the port this server listens on
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Helper method - answers a single request to PATH
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "{\"error\":\"Use POST\"}");
+                return;
+            }
+            String text = new String(exchange.getRequestBody().readAllBytes(),
+                                     StandardCharsets.UTF_8);
+            String label;
+            try {
+                label = batcher.submit(text).get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "{\"error\":\"Interrupted\"}");
+                return;
+            } catch (TimeoutException e) {
+                respond(exchange, 503, "{\"error\":\"Timed out\"}");
+                return;
+            } catch (IllegalStateException e) {
+                // Also catches the CancellationException of a request dropped by close()
+                respond(exchange, 503, "{\"error\":\"The server is stopping\"}");
+                return;
+            } catch (ExecutionException e) {
+                respond(exchange, 500, "{\"error\":\"Classification failed\"}");
+                return;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            respond(exchange, 200, "{\"label\":" + Metrics.quote(label) + ",\"latencyMicros\":" +
+                                   micros + "}");
+        }
+    }
+
+    // Helper method - answers a single request to METRICS_PATH
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                respond(exchange, 405, "{\"error\":\"Use GET\"}");
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.contains("format=json")) {
+                respond(exchange, 200, Metrics.toJson(classifier.featureHits()));
+            } else {
+                respond(exchange, 200, "text/plain; version=0.0.4; charset=utf-8",
+                        Metrics.toPrometheus(classifier.featureHits()));
+            }
+        }
+    }
+
+    // Helper method - sends the given JSON body with the given status code
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        respond(exchange, status, "application/json; charset=utf-8", json);
+    }
+
+    // Helper method - sends the given body of the given content type with the given status code
+    private static void respond(HttpExchange exchange, int status, String contentType,
+                                String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    // Helper method - returns an executor starting a virtual thread for every task if the JVM
+    //      supports them, or a cached pool of platform threads otherwise. Looked up reflectively
+    //      so the server still builds and runs on Java 17.
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
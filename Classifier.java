@@ -3,6 +3,8 @@
  */
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /*
  * The following creates a program that classifies if text-based inputs are spam or not. 
@@ -11,11 +13,28 @@ import java.util.*;
  * external file. 
  */
 public class Classifier {
-    private ClassifierNode overallRoot;
+    // Estimated size of one ClassifierNode: a 12 byte header, five references and a double
+    private static final long NODE_BYTES = 40;
+    // The compiled tree is rebuilt once the updates since it was last built add up to this
+    //      fraction of its nodes, so recompiling costs a constant amount per update
+    private static final int RECOMPILE_RATIO = 8;
+
+    private final AtomicReference<Snapshot> snapshot;
+    private final Object trainLock = new Object();
+    // Finds the feature word of each new decision node, or null to use the TextBlocks' own
+    //      findBiggestDifference. Guarded by trainLock, and dropped once the model is frozen.
+    private SplitFinder splitFinder;
+    private volatile boolean frozen;
+    // Number of nodes in the decision tree and updates since it was last compiled, guarded by
+    //      trainLock
+    private int nodes;
+    private int staleUpdates;
+
     /*
      * This creates a predictive model for text-based data. The algorithm for the predictions 
      *      is determined by a given file. Any input that is predicted as spam is classified as
-     *      "spam" and anything that isn't is classified as "Ham". 
+     *      "spam" and anything that isn't is classified as "Ham". A loaded model has no training
+     *      data, so it starts out frozen.
      * Parameters: 
      *      - input: reads the given file line by line
      * Exceptions: 
@@ -25,30 +44,59 @@ public class Classifier {
         if (input == null) {
             throw new IllegalArgumentException("The input cannot be null!");
         }
-        overallRoot = writeScannerTree(input);
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        snapshot = new AtomicReference<>(new Snapshot(null, compile(writeScannerTree(input)), 0));
+        frozen = true;
+        if (Metrics.ENABLED) {
+            Metrics.LOAD.record(System.nanoTime() - start);
+        }
     }
 
     /*
      * This actually contains the logic behind building a spam classifier tree for the predictive
-     *      algorithm.
+     *      algorithm. Nodes come in preorder, so each one is the left child of the innermost
+     *      decision node still missing one, or else its right child. The tree is read without
+     *      recursion, so however deep it is the stack can't overflow.
      * Parameters: 
      *      - input: reads the given file line by line
      * Return: 
      *      - ClassifierNode: the spam classifier tree that is getting built
      */
     private ClassifierNode writeScannerTree(Scanner input) {
-        ClassifierNode currentNode = null;
-        String line = input.nextLine();
-        if (line.contains("Feature")) {
-            double threshold = Double.parseDouble(input.nextLine().substring("Threshold: ".length()));
-            ClassifierNode left = writeScannerTree(input);
-            ClassifierNode right = writeScannerTree(input);
-            return new ClassifierNode(left, right, line.substring(9, line.length()), threshold);
-        }
-        else {
-            currentNode = new ClassifierNode(line);
-            return currentNode;
-        }
+        ClassifierNode root = null;
+        Deque<ClassifierNode> open = new ArrayDeque<>();
+        do {
+            ClassifierNode currentNode;
+            String line = input.nextLine();
+            if (line.contains("Feature")) {
+                double threshold = Double.parseDouble(input.nextLine().substring("Threshold: ".length()));
+                currentNode = new ClassifierNode(null, null, line.substring(9, line.length()), threshold);
+            }
+            else {
+                currentNode = new ClassifierNode(line);
+            }
+            if (open.isEmpty()) {
+                root = currentNode;
+            } else if (open.peek().leftLabel == null) {
+                open.peek().leftLabel = currentNode;
+            } else {
+                open.pop().rightLabel = currentNode;
+            }
+            if (!currentNode.isLeaf()) {
+                open.push(currentNode);
+            }
+        } while (!open.isEmpty());
+        return root;
+    }
+
+    /*
+     * This makes a predictive model that classifies with an already compiled decision tree.
+     * Parameters: 
+     *      - compiled: the compiled decision tree
+     */
+    private Classifier(CompiledTree compiled) {
+        this.snapshot = new AtomicReference<>(new Snapshot(null, compiled, 0));
+        this.frozen = true;
     }
 
     /*
@@ -63,6 +111,23 @@ public class Classifier {
      *          empty, or have differing sizes from each other
      */
     public Classifier(List<TextBlock> data, List<String> labels) {
+        this(data, labels, null);
+    }
+
+    /*
+     * This makes a predictive model for text-based data the same way as the constructor above,
+     *      but finds the word each new decision node splits on with the given SplitFinder. The
+     *      tree is the same as long as it picks the same word as findBiggestDifference. Further
+     *      updates use it too, until the model is frozen and lets go of it.
+     * Parameters: 
+     *      - data: these are training data for the model. It is a list of text-based data. 
+     *      - labels: a list of corresponding "Ham" or "Spam" labels for the training data
+     *      - splitFinder: the training backend, or null to compare the TextBlocks directly
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if the training data or labels are null,
+     *          empty, or have differing sizes from each other
+     */
+    public Classifier(List<TextBlock> data, List<String> labels, SplitFinder splitFinder) {
         if (data == null || labels == null) {
             throw new IllegalArgumentException();
         }
@@ -72,9 +137,127 @@ public class Classifier {
         if (data.isEmpty() || labels.isEmpty()) {
             throw new IllegalArgumentException();
         }
+        this.splitFinder = splitFinder;
+        ClassifierNode root = null;
         for (int i = 0; i < data.size(); i++) {
-            overallRoot = writeTree(data.get(i), labels.get(i), overallRoot);
+            root = writeTree(data.get(i), labels.get(i), root);
         }
+        nodes = size(root);
+        snapshot = new AtomicReference<>(new Snapshot(root, compile(root), 0));
+    }
+
+    /*
+     * This trains the model further on one more data-label pair, the same way each pair given to
+     *      the training constructor is added. Training is only possible until the model is
+     *      frozen. This is safe to call while other threads classify with the model: the nodes
+     *      on the path from the root to the changed leaf are copied instead of changed, and the
+     *      new tree is published in one step, so classifying always sees either the old or the
+     *      new tree, never a mix. Concurrent updates are applied one at a time.
+     * Parameters: 
+     *      - data: the training data that is waiting to be classified
+     *      - label: the classification label for the training data
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if the data or label is null
+     *      - IllegalStateException(): gets thrown if the model is frozen
+     */
+    public void update(TextBlock data, String label) {
+        if (data == null || label == null) {
+            throw new IllegalArgumentException();
+        }
+        synchronized (trainLock) {
+            if (frozen) {
+                throw new IllegalStateException("A frozen model can't be trained");
+            }
+            Snapshot current = snapshot.get();
+            ClassifierNode root = writePath(data, label, current.root);
+            if (root == current.root) {
+                return;
+            }
+            nodes += 2;
+            staleUpdates++;
+            CompiledTree compiled = null;
+            if (staleUpdates * RECOMPILE_RATIO >= nodes) {
+                compiled = compile(root);
+                staleUpdates = 0;
+            }
+            snapshot.set(new Snapshot(root, compiled, current.version + 1));
+        }
+    }
+
+    /*
+     * This freezes the model once training is done. The training data kept in the decision tree
+     *      is dropped, leaving only the compiled form of the tree that classifying uses, where
+     *      feature words and labels are interned to small indices. A frozen model can still
+     *      classify and be saved, but it can't be trained any further, so the SplitFinder it was
+     *      trained with is dropped too.
+     */
+    public void freeze() {
+        synchronized (trainLock) {
+            snapshot.set(new Snapshot(null, compiled(), snapshot.get().version));
+            splitFinder = null;
+            frozen = true;
+        }
+    }
+
+    /*
+     * This tells you whether the model is frozen, meaning it can no longer be trained.
+     * Return: 
+     *      - true if the model is frozen and false if not
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /*
+     * This tells you how many times training has changed the model since it was created, so
+     *      results computed with an earlier version can be told apart from current ones.
+     * Return: 
+     *      - long: the number of updates that changed the decision tree
+     */
+    public long version() {
+        return snapshot.get().version;
+    }
+
+    /*
+     * This estimates how many bytes of heap the model keeps reachable, assuming a 64-bit JVM with
+     *      compressed references. This covers the compiled tree, plus the decision tree and its
+     *      training data until the model is frozen. Words shared through the Vocabulary and the
+     *      SplitFinder the model was trained with, if any, are not counted.
+     * Return: 
+     *      - long: the estimated number of bytes retained by the model
+     */
+    public long retainedBytes() {
+        Snapshot current = snapshot.get();
+        return compiled().retainedBytes() + retainedBytes(current.root);
+    }
+
+    /*
+     * This contains the logic behind estimating the bytes retained by the decision tree.
+     * Parameters: 
+     *      - root: the root of the decision tree
+     * Return: 
+     *      - long: the estimated number of bytes retained by the tree
+     */
+    private static long retainedBytes(ClassifierNode root) {
+        long bytes = 0;
+        Deque<ClassifierNode> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            ClassifierNode curr = pending.pop();
+            bytes += NODE_BYTES;
+            if (curr.data != null) {
+                bytes += curr.data.retainedBytes();
+            }
+            if (curr.leftLabel != null) {
+                pending.push(curr.leftLabel);
+            }
+            if (curr.rightLabel != null) {
+                pending.push(curr.rightLabel);
+            }
+        }
+        return bytes;
     }
 
     /*
@@ -91,45 +274,112 @@ public class Classifier {
      * Parameters: 
      *      - datas: the training data that is waitign to be classified
      *      - labels: the classification label for the training data
-     *      - curr: the current node in the traversal of the decision tree
+     *      - curr: the root of the decision tree
      * Return: 
      *      - The updated tree with the new data-label pair inserted if needed based on the
      *          conditions defined above.   
      */
     private ClassifierNode writeTree(TextBlock datas, String labels, ClassifierNode curr) {
+        ClassifierNode parent = null;
+        boolean left = false;
+        ClassifierNode node = curr;
+        while (node != null && !node.isLeaf()) {
+            parent = node;
+            left = datas.get(node.featureWord) < node.threshold;
+            node = left ? node.leftLabel : node.rightLabel;
+        }
+        ClassifierNode written = writeLeaf(datas, labels, node);
+        if (parent == null) {
+            return written;
+        }
+        if (left) {
+            parent.leftLabel = written;
+        } else {
+            parent.rightLabel = written;
+        }
+        return curr;
+    }
+
+    /*
+     * This contains the logic behind writing a data-label pair where the walk down the decision
+     *      tree ends: in place of an empty tree, or into a label node as described for
+     *      writeTree().
+     * Parameters: 
+     *      - datas: the training data that is waiting to be classified
+     *      - labels: the classification label for the training data
+     *      - curr: the label node the training data falls into, or null if there is none
+     * Return: 
+     *      - The node that takes the place of the given one, which is the given node itself if
+     *          its label agrees.
+     */
+    private ClassifierNode writeLeaf(TextBlock datas, String labels, ClassifierNode curr) {
         if (curr == null) {
             return new ClassifierNode(datas, labels);
         }
-        if (curr.isLeaf()) {
-            if (curr.classificationLabel.equals(labels)) {
-                return curr;
-            }
-            String feature = datas.findBiggestDifference(curr.data);
-            double threshold = midpoint(curr.data.get(feature), datas.get(feature));
-            ClassifierNode left;
-            ClassifierNode right;
-            if (datas.get(feature) < threshold) {
-                left = new ClassifierNode(datas, labels);
-                right = curr;
-            } 
-            else {
-                left = curr;
-                right = new ClassifierNode(datas, labels);
+        if (curr.classificationLabel.equals(labels)) {
+            return curr;
+        }
+        String feature = splitFinder == null ? datas.findBiggestDifference(curr.data)
+                                             : splitFinder.findBiggestDifference(datas, curr.data);
+        double threshold = midpoint(curr.data.get(feature), datas.get(feature));
+        ClassifierNode left;
+        ClassifierNode right;
+        if (datas.get(feature) < threshold) {
+            left = new ClassifierNode(datas, labels);
+            right = curr;
+        } 
+        else {
+            left = curr;
+            right = new ClassifierNode(datas, labels);
+        }
+        return new ClassifierNode(left, right, feature, threshold);
+    }
+
+    /*
+     * This inserts a data-label pair into a decision tree the same way writeTree() does, but
+     *      without changing any node of the given tree, so threads still reading it are not
+     *      affected. Every decision node on the path to the changed leaf is copied instead.
+     * Parameters: 
+     *      - datas: the training data that is waiting to be classified
+     *      - labels: the classification label for the training data
+     *      - curr: the root of the decision tree
+     * Return: 
+     *      - The new tree, sharing every node off the changed path with the given tree. If the
+     *          pair didn't change anything, the given tree itself is returned.
+     */
+    private ClassifierNode writePath(TextBlock datas, String labels, ClassifierNode curr) {
+        List<ClassifierNode> path = new ArrayList<>();
+        ClassifierNode node = curr;
+        while (node != null && !node.isLeaf()) {
+            path.add(node);
+            node = datas.get(node.featureWord) < node.threshold ? node.leftLabel : node.rightLabel;
+        }
+        ClassifierNode written = writeLeaf(datas, labels, node);
+        if (written == node) {
+            return curr;
+        }
+        // Copy the path bottom-up, each copy pointing at the copy of the node below it
+        for (int i = path.size() - 1; i >= 0; i--) {
+            ClassifierNode parent = path.get(i);
+            if (parent.leftLabel == node) {
+                written = new ClassifierNode(written, parent.rightLabel, parent.featureWord,
+                                             parent.threshold);
+            } else {
+                written = new ClassifierNode(parent.leftLabel, written, parent.featureWord,
+                                             parent.threshold);
             }
-            return new ClassifierNode(left, right, feature, threshold);
+            node = parent;
         }
-            
-         if (datas.get(curr.featureWord) < curr.threshold) {
-            curr.leftLabel = writeTree(datas, labels, curr.leftLabel);
-         } else {
-            curr.rightLabel = writeTree(datas, labels, curr.rightLabel);
-         }
-         return curr;
+        return written;
     }
 
 
     /*
      * This saves the predictive decision tree algorithm to an external file in text-based format.
+     *      Decision nodes feature word is marked as "Feature: " and its threshold "Threshold: ".
+     *      Label nodes are marked with just either "Ham" or "Spam". Nodes are written in preorder.
+     *      Model files are read back as UTF-8 (see ModelRegistry.load), so the output should
+     *      write UTF-8 for models with non-ASCII words or labels to load the same.
      * Parameters: 
      *      - output: the file that the algorithm will be saved in
      * Exceptions: 
@@ -139,35 +389,58 @@ public class Classifier {
         if (output == null) {
             throw new IllegalArgumentException();
         }
-        save(output, overallRoot);
+        compiled().saveText(output);
     }
 
     /*
-     * This method actually contains the logic behind capturing data in the decision tree to put in
-     *      the external file. This traverses through the whole decision tree and captures
-     *      information from every single decision and label node that exists to put in the file.
-     *      Decision nodes feature word is marked as "Feature: " and its threshold "Threshold: ".
-     *      Label nodes are marked with just either "Ham" or "Spam"
+     * This saves the predictive decision tree algorithm to the file with the given name in a
+     *      compact binary format. The binary format can be loaded back much faster than the
+     *      text-based format through loadBinary().
      * Parameters: 
-     *      - output: the file that the decision tree data is being stored into
-     *      - curr: the current node being processed in the tree
+     *      - fileName: the name of the file that the algorithm will be saved in
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if the file name is null
+     *      - IOException(): gets thrown if the file can't be written
      */
-    private void save(PrintStream output, ClassifierNode curr) {
-        if (curr != null) {
-            if (curr.leftLabel != null && curr.rightLabel != null) {
-                output.println("Feature: " + curr.featureWord);
-                output.println("Threshold: " + curr.threshold);
-                save(output, curr.leftLabel);
-                save(output, curr.rightLabel);
-            }
-            else {
-                output.println(curr.classificationLabel);
-            }
+    public void saveBinary(String fileName) throws IOException {
+        if (fileName == null) {
+            throw new IllegalArgumentException();
         }
+        compiled().saveBinary(fileName);
     }
 
     /*
-     * This classifies an input as either "Ham" or "Spam".
+     * This loads a predictive model from a file that was written by saveBinary(). The file is
+     *      memory-mapped and read straight into the compiled form used for classifying, so no
+     *      per-node parsing is needed. The loaded model can classify and be saved, but it carries
+     *      no training data.
+     * Parameters: 
+     *      - fileName: the name of the file that the model is loaded from
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if the file name is null
+     *      - IOException(): gets thrown if the file can't be read or isn't a valid binary model
+     * Return: 
+     *      - Classifier: the loaded model
+     */
+    public static Classifier loadBinary(String fileName) throws IOException {
+        if (fileName == null) {
+            throw new IllegalArgumentException();
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Classifier loaded = new Classifier(CompiledTree.loadBinary(fileName));
+        if (Metrics.ENABLED) {
+            Metrics.LOAD.record(System.nanoTime() - start);
+        }
+        return loaded;
+    }
+
+    /*
+     * This classifies an input as either "Ham" or "Spam". This walks the compiled form of the
+     *      decision tree, comparing the probability of each decision node's word in the input
+     *      with its threshold. If it is less than the threshold, then the left child node is
+     *      looked at next. If greater, then the right child node is. This goes on until a "Ham"
+     *      or "Spam" node is reached. Right after the model has been updated, the decision tree
+     *      itself is walked instead until it is compiled again.
      * Parameters: 
      *      - input: text-based data that is waiting to get classified
      * Exceptions: 
@@ -180,47 +453,503 @@ public class Classifier {
         if (input == null) {
             throw new IllegalArgumentException();
         }
-        return classify(input, overallRoot);
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Snapshot current = snapshot.get();
+        String label;
+        if (current.compiled == null) {
+            label = classify(current.root, input);
+        } else {
+            label = current.compiled.classify(input);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.CLASSIFY.record(System.nanoTime() - start);
+        }
+        return label;
     }
 
     /*
-     * This contains the logic behind classifying an input as "Ham" or "Spam".
-     * This traverses through the decision tree. Whichever word the input has that aligns
-     * with a certain word on a decision node, the method compares the probability of the word
-     * in the TextBlock with the threshold number. If it is less than the threshold, then the 
-     * algorithm would look at the left child nodes to the decision node. If greater, then the
-     * right child nodes would be looked at. This goes on until a "Ham" or "Spam node is reached".
+     * This contains the logic behind classifying an input by walking the decision tree itself.
      * Parameters: 
+     *      - curr: the root of the decision tree
      *      - input: text-based data that is waiting to get classified
-     *      - curr: The current node that is being looked at in the decision tree
      * Return: 
-     *      - String: If the entire tree is null, then an empty String is returned. Else,
-     *          either "Ham" or "Spam" is returned.
-     */
-    private String classify(TextBlock input, ClassifierNode curr) {
-        String result = "";
-        if (curr != null) {
-            if (curr.isLeaf()) {
-                result = curr.classificationLabel;
-                return result;
+     *      - The classification label of the input
+     */
+    private static String classify(ClassifierNode curr, TextBlock input) {
+        while (!curr.isLeaf()) {
+            if (input.get(curr.featureWord) < curr.threshold) {
+                curr = curr.leftLabel;
+            } else {
+                curr = curr.rightLabel;
             }
-            else {
-                String specificWord = "";
-                for (String element : input.getFeatures()) {
-                    if (element.equals(curr.featureWord)) {
-                        specificWord = element;
-                    }  
+        }
+        return curr.classificationLabel;
+    }
+
+    /*
+     * This classifies raw text as either "Ham" or "Spam" without building a TextBlock for it.
+     *      The text is scanned once, counting only the words the decision tree looks at plus the
+     *      total number of words, so this gives the same label as classifying a TextBlock made
+     *      from the same text. Until the tree is compiled again after an update, the text is
+     *      turned into a TextBlock.known() instead, so its words are never added to the
+     *      Vocabulary either way.
+     * Parameters: 
+     *      - text: the raw text that is waiting to get classified
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if the given text is null
+     * Return: 
+     *      - The classification label which is either "Ham" (not spam) or "Spam". If the decision
+     *          tree is null, then "" is returned.
+     */
+    public String classify(CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException();
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Snapshot current = snapshot.get();
+        String label;
+        if (current.compiled == null) {
+            label = classify(current.root, TextBlock.known(text));
+        } else {
+            label = current.compiled.classify(text);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.CLASSIFY.record(System.nanoTime() - start);
+        }
+        return label;
+    }
+
+    /*
+     * This classifies a batch of raw texts the same way classify(CharSequence) does, all of them
+     *      against the same version of the model: the current tree is looked up once for the
+     *      whole batch, so an update in the middle of it can't give some texts the old model
+     *      and others the new one.
+     * Parameters: 
+     *      - texts: the raw texts that are waiting to get classified
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if the list or any text in it is null
+     * Return: 
+     *      - String[]: the classification label of each text, at the same index as the text. If
+     *          the decision tree is null, then every label is "".
+     */
+    public String[] classifyTexts(List<? extends CharSequence> texts) {
+        if (texts == null || texts.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        Snapshot current = snapshot.get();
+        String[] labels = new String[texts.size()];
+        for (int i = 0; i < labels.length; i++) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            CharSequence text = texts.get(i);
+            if (current.compiled == null) {
+                labels[i] = classify(current.root, TextBlock.known(text));
+            } else {
+                labels[i] = current.compiled.classify(text);
+            }
+            if (Metrics.ENABLED) {
+                Metrics.CLASSIFY.record(System.nanoTime() - start);
+            }
+        }
+        return labels;
+    }
+
+    /*
+     * This returns the compiled form of the current decision tree, the one classifying uses. A
+     *      compiled tree never changes: training the model further compiles a new one.
+     * Return: 
+     *      - CompiledTree: the compiled form of the current decision tree
+     */
+    public CompiledTree getCompiledTree() {
+        return compiled();
+    }
+
+    /*
+     * This compiles the current decision tree into bytecode for the JIT, with every decision
+     *      turned into a comparison against a constant, which then classifies in place of the
+     *      flattened tree. The labels it gives are exactly the same. Trees that are too large
+     *      (or empty) keep being walked as before. Training the model further drops the
+     *      generated code along with the old tree, so this is meant for frozen models.
+     * Return: 
+     *      - true if the current tree now runs as generated code and false if not
+     */
+    public boolean generate() {
+        return compiled().generate();
+    }
+
+    /*
+     * This simplifies the decision tree without changing the label it gives any input. Decisions
+     *      that can only go one way, because the decisions above them already settle how likely
+     *      their word is, are dropped, and every subtree whose reachable leaves all share one
+     *      label becomes a single leaf, so classifying takes fewer steps. The model is frozen
+     *      first, since training further would need the training data the merged leaves held.
+     *      Code generated for the old tree is dropped; call generate() again for the new one.
+     * Return: 
+     *      - String: the number of nodes and leaves and the average and greatest depth of the
+     *          tree before and after
+     */
+    public String simplify() {
+        synchronized (trainLock) {
+            frozen = true;
+            CompiledTree before = compiled();
+            CompiledTree after = before.simplify();
+            snapshot.set(new Snapshot(null, after, snapshot.get().version));
+            return "Before: " + before.shape() + System.lineSeparator()
+                   + "After:  " + after.shape();
+        }
+    }
+
+    /*
+     * This tells you how many times the decision nodes of each feature word have been visited
+     *      while classifying, which shows the parts of the tree that real traffic uses most.
+     *      Visits are only counted when metrics are enabled (see Metrics), and are counted on
+     *      the compiled tree, so they start over whenever an update recompiles it.
+     * Return: 
+     *      - Map<String, Long>: the number of visits to each feature word, most visited first.
+     *          Empty if metrics are disabled.
+     */
+    public Map<String, Long> featureHits() {
+        return compiled().featureHits();
+    }
+
+    /*
+     * This classifies every input in the given list as either "Ham" or "Spam". The list is split
+     *      into chunks that are classified in parallel on the common fork-join pool.
+     * Parameters: 
+     *      - inputs: text-based data that is waiting to get classified
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if the list or any input in it is null
+     * Return: 
+     *      - List<String>: the classification label of each input, at the same index as the
+     *          input. If the decision tree is null, then every label is "".
+     */
+    public List<String> classifyAll(List<TextBlock> inputs) {
+        if (inputs == null || inputs.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        String[] results = new String[inputs.size()];
+        ForkJoinPool.commonPool().invoke(new ClassifyTask(compiled(), inputs, results, 0,
+                                                          results.length));
+        return Arrays.asList(results);
+    }
+
+    /*
+     * This calculates the accuracy of this model on the given testing data and labels the same
+     *      way calculateAccuracy() does, but classifies the data in parallel on the common
+     *      fork-join pool. Each chunk of the data is counted separately and the counts are only
+     *      merged once the chunks are done, so no counters are shared between threads.
+     * Parameters: 
+     *      - data: the list of text-based data to classify
+     *      - labels: the expected label of each datapoint, at the same index
+     * Exceptions: 
+     *      - IllegalArgumentException(): gets thrown if either list is null or contains null, or
+     *          if the lists have differing sizes
+     * Return: 
+     *      - Map<String, Double>: the classification accuracy for each of the encountered labels
+     *          plus the "Overall" accuracy
+     */
+    public Map<String, Double> calculateAccuracyParallel(List<TextBlock> data,
+                                                         List<String> labels) {
+        if (data == null || labels == null || data.contains(null) || labels.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        if (data.size() != labels.size()) {
+            throw new IllegalArgumentException(
+                    String.format("Length of provided data [%d] doesn't match provided labels [%d]",
+                                  data.size(), labels.size()));
+        }
+        AccuracyTally tally = ForkJoinPool.commonPool().invoke(
+                new AccuracyTask(compiled(), data, labels, 0, data.size()));
+
+        Map<String, Double> labelToCorrect = new HashMap<>();
+        for (String label : tally.correct.keySet()) {
+            labelToCorrect.put(label, (double) tally.correct.get(label) / tally.total.get(label));
+        }
+        return labelToCorrect;
+    }
+
+    /*
+     * This returns the compiled form of the current decision tree, compiling it first if the
+     *      model has been updated since it was last compiled. A tree compiled here is published
+     *      for other readers too, unless the model has been updated again in the meantime.
+     * Return: 
+     *      - CompiledTree: the compiled form of the current decision tree
+     */
+    private CompiledTree compiled() {
+        Snapshot current = snapshot.get();
+        if (current.compiled != null) {
+            return current.compiled;
+        }
+        CompiledTree compiled = compile(current.root);
+        snapshot.compareAndSet(current, new Snapshot(current.root, compiled, current.version));
+        return compiled;
+    }
+
+    /*
+     * This freezes the given decision tree into its flat, array-based form so that classifying
+     *      does not have to chase node pointers. Nodes are laid out in preorder, so the left
+     *      child of a decision node always comes right after it.
+     * Parameters: 
+     *      - root: the root of the decision tree being compiled
+     * Return: 
+     *      - CompiledTree: the compiled form of the decision tree. If the tree is null, then the
+     *          compiled tree has no nodes.
+     */
+    private static CompiledTree compile(ClassifierNode root) {
+        int size = size(root);
+        int[] feature = new int[size];
+        double[] threshold = new double[size];
+        int[] next = new int[size];
+        Map<String, Integer> featureIds = new LinkedHashMap<>();
+        Map<String, Integer> labelIds = new LinkedHashMap<>();
+        compile(root, feature, threshold, next, featureIds, labelIds);
+        return new CompiledTree(featureIds.keySet().toArray(new String[0]),
+                                labelIds.keySet().toArray(new String[0]),
+                                feature, threshold, next);
+    }
+
+    /*
+     * This contains the logic behind compiling a decision tree. Each node is written at the next
+     *      index, then its left subtree right after it and its right subtree after that. Right
+     *      children wait on a stack until their left sibling's subtree is written, at which point
+     *      the index they get is the one their parent points to.
+     * Parameters: 
+     *      - root: the root of the decision tree being compiled
+     *      - feature, threshold, next: the node arrays of the compiled tree
+     *      - featureIds: the index assigned to every feature word seen so far
+     *      - labelIds: the index assigned to every classification label seen so far
+     */
+    private static void compile(ClassifierNode root, int[] feature, double[] threshold,
+                                int[] next, Map<String, Integer> featureIds,
+                                Map<String, Integer> labelIds) {
+        ClassifierNode[] pending = new ClassifierNode[feature.length + 1];
+        // For each pending right child, the index of its parent (-1 for left children)
+        int[] parents = new int[feature.length + 1];
+        int top = 0;
+        if (root != null) {
+            pending[top] = root;
+            parents[top++] = -1;
+        }
+        int index = 0;
+        while (top > 0) {
+            top--;
+            ClassifierNode curr = pending[top];
+            if (parents[top] >= 0) {
+                next[parents[top]] = index;
+            }
+            if (curr.leftLabel != null && curr.rightLabel != null) {
+                feature[index] = intern(featureIds, curr.featureWord);
+                threshold[index] = curr.threshold;
+                pending[top] = curr.rightLabel;
+                parents[top++] = index;
+                pending[top] = curr.leftLabel;
+                parents[top++] = -1;
+            } else {
+                feature[index] = CompiledTree.LEAF;
+                next[index] = intern(labelIds, curr.classificationLabel);
+            }
+            index++;
+        }
+    }
+
+    /*
+     * This returns the index assigned to the given value, assigning the next free index to it
+     *      if it hasn't been seen yet.
+     * Parameters: 
+     *      - ids: the index assigned to every value seen so far
+     *      - value: the value whose index is returned
+     * Return: 
+     *      - int: the index of the value
+     */
+    private static int intern(Map<String, Integer> ids, String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = ids.size();
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    /*
+     * This counts the nodes of the given decision tree the same way save() visits them.
+     * Parameters: 
+     *      - root: the root of the decision tree
+     * Return: 
+     *      - int: the number of nodes in the tree
+     */
+    private static int size(ClassifierNode root) {
+        int size = 0;
+        Deque<ClassifierNode> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            ClassifierNode curr = pending.pop();
+            size++;
+            if (curr.leftLabel != null && curr.rightLabel != null) {
+                pending.push(curr.rightLabel);
+                pending.push(curr.leftLabel);
+            }
+        }
+        return size;
+    }
+
+    /*
+     * This interface is a training backend that finds the word a new decision node splits on,
+     *      in place of TextBlock.findBiggestDifference. It is only called while training, by one
+     *      thread at a time.
+     */
+    public interface SplitFinder {
+        /*
+         * This finds the word whose probability differs the most between two TextBlocks.
+         * Parameters: 
+         *      - one: the training data being added
+         *      - other: the training data of the label node it conflicts with
+         * Return: 
+         *      - String: the same word one.findBiggestDifference(other) returns
+         */
+        String findBiggestDifference(TextBlock one, TextBlock other);
+    }
+
+    /*
+     * This class holds one published version of the model: the root of its decision tree (null
+     *      once the model is frozen), the compiled form of that tree (null until the tree has
+     *      been compiled again after an update) and the number of updates that changed the tree.
+     *      Neither a Snapshot nor the nodes reachable from it change after it has been published.
+     */
+    private static class Snapshot {
+        public final ClassifierNode root;
+        public final CompiledTree compiled;
+        public final long version;
+
+        public Snapshot(ClassifierNode root, CompiledTree compiled, long version) {
+            this.root = root;
+            this.compiled = compiled;
+            this.version = version;
+        }
+    }
+
+    /*
+     * This class classifies a range of inputs in parallel by splitting it in half until the
+     *      pieces are small enough to classify directly.
+     */
+    private static class ClassifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int CHUNK_SIZE = 32;
+
+        private final CompiledTree tree;
+        private final List<TextBlock> inputs;
+        private final String[] results;
+        private final int start;
+        private final int end;
+
+        /*
+         * This makes a task that classifies the inputs from index start (inclusive) to end
+         *      (exclusive), storing each label in results at the same index.
+         */
+        public ClassifyTask(CompiledTree tree, List<TextBlock> inputs, String[] results,
+                            int start, int end) {
+            this.tree = tree;
+            this.inputs = inputs;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (end - start <= CHUNK_SIZE) {
+                for (int i = start; i < end; i++) {
+                    results[i] = tree.classify(inputs.get(i));
                 }
-                if (input.get(specificWord) < curr.threshold) {
-                    result = classify(input, curr.leftLabel);
-                } else {
-                    result = classify(input, curr.rightLabel);
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new ClassifyTask(tree, inputs, results, start, mid),
+                          new ClassifyTask(tree, inputs, results, mid, end));
+            }
+        }
+    }
+
+    /*
+     * This class counts, for each label, how many datapoints were expected to have it and how
+     *      many of those were classified correctly. "Overall" counts every datapoint.
+     */
+    private static class AccuracyTally {
+        public final Map<String, Integer> total = new HashMap<>();
+        public final Map<String, Integer> correct = new HashMap<>();
+
+        public AccuracyTally() {
+            total.put("Overall", 0);
+            correct.put("Overall", 0);
+        }
+
+        /*
+         * This counts one classified datapoint.
+         * Parameters: 
+         *      - result: the label the datapoint was classified as
+         *      - label: the label the datapoint was expected to have
+         */
+        public void add(String result, String label) {
+            total.merge(label, 1, Integer::sum);
+            total.merge("Overall", 1, Integer::sum);
+            if (result.equals(label)) {
+                correct.merge(result, 1, Integer::sum);
+                correct.merge("Overall", 1, Integer::sum);
+            }
+        }
+
+        /*
+         * This adds all the counts of the other tally to this one.
+         * Return: 
+         *      - AccuracyTally: this tally
+         */
+        public AccuracyTally addAll(AccuracyTally other) {
+            other.total.forEach((label, count) -> total.merge(label, count, Integer::sum));
+            other.correct.forEach((label, count) -> correct.merge(label, count, Integer::sum));
+            return this;
+        }
+    }
+
+    /*
+     * This class classifies and counts a range of testing data in parallel. Each leaf task
+     *      counts into its own tally and the tallies are merged on the way back up.
+     */
+    private static class AccuracyTask extends RecursiveTask<AccuracyTally> {
+        private static final long serialVersionUID = 1L;
+        private static final int CHUNK_SIZE = 32;
+
+        private final CompiledTree tree;
+        private final List<TextBlock> data;
+        private final List<String> labels;
+        private final int start;
+        private final int end;
+
+        /*
+         * This makes a task that counts the datapoints from index start (inclusive) to end
+         *      (exclusive).
+         */
+        public AccuracyTask(CompiledTree tree, List<TextBlock> data, List<String> labels,
+                            int start, int end) {
+            this.tree = tree;
+            this.data = data;
+            this.labels = labels;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected AccuracyTally compute() {
+            if (end - start <= CHUNK_SIZE) {
+                AccuracyTally tally = new AccuracyTally();
+                for (int i = start; i < end; i++) {
+                    tally.add(tree.classify(data.get(i)), labels.get(i));
                 }
+                return tally;
             }
+            int mid = (start + end) >>> 1;
+            AccuracyTask right = new AccuracyTask(tree, data, labels, mid, end);
+            right.fork();
+            AccuracyTally left = new AccuracyTask(tree, data, labels, start, mid).compute();
+            return left.addAll(right.join());
         }
-        return result;
     }
-    
 
     ////////////////////////////////////////////////////////////////////
     // PROVIDED METHODS - **DO NOT MODIFY ANYTHING BELOW THIS LINE!** //
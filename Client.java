@@ -1,6 +1,8 @@
 import java.util.*;
 import java.util.function.*;
+import java.util.stream.*;
 import java.io.*;
+import java.nio.charset.*;
 
 // Client class for interaction with Classifiers
 public class Client {
@@ -15,7 +17,10 @@ public class Client {
     // index 1 corresponds with the second column: Message
     public static final int CONTENT_INDEX = 1;
 
-    public static void main(String[] args) throws FileNotFoundException {
+    // File extension of models saved in (and loaded from) the binary format
+    public static final String BINARY_EXTENSION = ".bin";
+
+    public static void main(String[] args) throws IOException {
         Scanner console = new Scanner(System.in);
         System.out.println("Welcome to the CSE 123 Classifier! " +
                            "To begin, enter your desired mode of operation:");
@@ -45,8 +50,14 @@ public class Client {
             } else if (choice == 2) {
                 testModel(c, TEST_FILE);
             } else if (choice == 3) {
-                System.out.print("Please enter the file name you'd like to save to: ");
-                c.save(new PrintStream(console.next() + ".txt"));
+                System.out.print("Please enter the file name you'd like to save to " +
+                                 "(end it with " + BINARY_EXTENSION + " for the binary format): ");
+                String fileName = console.next();
+                if (fileName.endsWith(BINARY_EXTENSION)) {
+                    c.saveBinary(fileName);
+                } else {
+                    c.save(new PrintStream(fileName + ".txt", StandardCharsets.UTF_8));
+                }
             }
         } while (choice != 4);
     }
@@ -55,9 +66,10 @@ public class Client {
     //      Loading a previously created model file or
     //      Training a model from a provided dataset
     // Requires a Scanner connected to the console to retrieve user input
-    // Throws a FileNotFoundException
-    //      If one of the client provided files doesn't exist
-    private static Classifier createModel(Scanner console) throws FileNotFoundException {
+    // Model files ending in BINARY_EXTENSION are loaded as binary models
+    // Throws an IOException
+    //      If one of the client provided files doesn't exist or isn't a valid model
+    private static Classifier createModel(Scanner console) throws IOException {
         System.out.println("1) Train classification model");
         System.out.println("2) Load model from file");
         System.out.print("Enter your choice here: ");
@@ -70,25 +82,37 @@ public class Client {
 
         if (choice == 1) {
             DataLoader loader = new DataLoader(TRAIN_FILE, LABEL_INDEX, CONTENT_INDEX);
-            return new Classifier(loader.getData(), loader.getLabels());
+            Classifier c = new Classifier(loader.getData(), loader.getLabels());
+            long trainedBytes = c.retainedBytes();
+            c.freeze();
+            System.out.println("Model size: " + trainedBytes + " bytes while training, " +
+                               c.retainedBytes() + " bytes once frozen");
+            return c;
         } else {
             System.out.print("Please enter the path to the file you'd like to load: ");
-            Scanner input = new Scanner(new File(console.next()));
+            String fileName = console.next();
+            if (fileName.endsWith(BINARY_EXTENSION)) {
+                return Classifier.loadBinary(fileName);
+            }
+            Scanner input = new Scanner(new File(fileName), StandardCharsets.UTF_8);
             return new Classifier(input);
         }
     }
 
     // Uses the given Classifier to predict labels for the datapoints within the given testing 
-    //      file, printing out the results
-    // Throws a FileNotFoundException
-    //      If the provided testing dataset file doesn't exist
-    private static void evalModel(Classifier c, String fileName) throws FileNotFoundException {
-        DataLoader loader = new DataLoader(fileName, LABEL_INDEX, CONTENT_INDEX);
-        List<String> results = new ArrayList<>();
-        for (TextBlock data : loader.getData()) {
-            results.add(c.classify(data));
-        }
-        System.out.println("Results: " + results);
+    //      file, printing out the results in file order, one per line, as soon as they're ready.
+    //      Rows are read and classified in a pipeline (see StreamingEvaluator), so files of any
+    //      size are evaluated in the same amount of memory. Labels are written as UTF-8.
+    // Throws an IOException
+    //      If the provided testing dataset file doesn't exist or can't be read
+    private static void evalModel(Classifier c, String fileName) throws IOException {
+        System.out.println("Results:");
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+                                                               StandardCharsets.UTF_8));
+        new StreamingEvaluator(c, Runtime.getRuntime().availableProcessors(),
+                               StreamingEvaluator.DEFAULT_WINDOW)
+                .evaluate(fileName, CONTENT_INDEX, out);
+        out.flush();
     }
 
     // Tests the given Classifier on the datapoints within the given testing file, printing out the
@@ -97,8 +121,8 @@ public class Client {
     //      If the provided testing dataset file doesn't exist
     private static void testModel(Classifier c, String fileName) throws FileNotFoundException {
         DataLoader loader = new DataLoader(fileName, LABEL_INDEX, CONTENT_INDEX);
-        Map<String, Double> labelToAccuracy = c.calculateAccuracy(loader.getData(),
-                                                                  loader.getLabels());
+        Map<String, Double> labelToAccuracy = c.calculateAccuracyParallel(loader.getData(),
+                                                                          loader.getLabels());
         for (String label : labelToAccuracy.keySet()) {
             System.out.println(label + ": " + labelToAccuracy.get(label));
         }
@@ -0,0 +1,734 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+// This class represents a frozen, array-based form of a Classifier decision tree that is
+//      ready for inference. Nodes are stored in preorder inside parallel primitive arrays, so
+//      the left child of a decision node is always the node right after it and only the index
+//      of the right child has to be stored.
+// A CompiledTree can be saved in the same text format as Classifier.save(), or in a compact
+//      binary format laid out like this (all numbers big-endian):
+//          int     MAGIC
+//          int     BINARY_VERSION
+//          int     number of nodes, number of features, number of labels
+//          string  every feature, then every label (int byte length, then UTF-8 bytes; a
+//                  length of -1 stands for a null feature)
+//          padding zero bytes up to the next multiple of 8
+//          double  threshold of every node
+//          int     feature of every node
+//          int     next of every node
+//          long    CRC-32 of every byte before it
+// For the busiest paths, generate() turns the tree into bytecode that classify() uses instead of
+//      walking the arrays (see TreeGenerator).
+public class CompiledTree {
+    // Value stored in 'feature' for label (leaf) nodes
+    public static final int LEAF = -1;
+
+    // First four bytes of every binary model file ("SPMC")
+    public static final int MAGIC = 0x53504D43;
+    public static final int BINARY_VERSION = 1;
+
+    // Number of characters of text output gathered before it is handed to the PrintStream
+    private static final int TEXT_CHUNK = 1 << 16;
+    // Ways a decision node can go, and steps of the walk in reachableWays(), used by simplify()
+    private static final byte LEFT = 1;
+    private static final byte RIGHT = 2;
+    private static final byte BOTH = LEFT | RIGHT;
+    private static final int VISIT = 0;
+    private static final int NARROW = 1;
+    private static final int RESTORE = 2;
+
+    private final String[] features;
+    private final int[] featureIds;
+    private final String[] labels;
+    private final int[] feature;
+    private final double[] threshold;
+    private final int[] next;
+
+    // Open-addressing table from the Vocabulary ID of each feature to its index in 'features'.
+    //      Keys are stored as (ID + 1) so that 0 can mark an empty slot.
+    private final int[] slotKeys;
+    private final int[] slotValues;
+    // Per-thread buffers used by classify(CharSequence)
+    private final ThreadLocal<Scratch> scratch;
+    // Number of times each node has been visited while classifying, or null unless
+    //      Metrics.ENABLED
+    private final LongAdder[] hits;
+    // Generated code for this tree, or null until generate() succeeds
+    private volatile TreeGenerator.Walker walker;
+    private boolean generateTried;
+
+    // Constructs a new CompiledTree from its preorder node arrays.
+    //      'features' holds every distinct feature word and 'labels' every distinct label.
+    //      For each node i, 'feature[i]' is an index into 'features' (or LEAF for a label node),
+    //      'threshold[i]' is the decision threshold and 'next[i]' is the index of the right
+    //      child for decision nodes or an index into 'labels' for label nodes.
+    // Throws an IllegalArgumentException
+    //      If any array is null, the node arrays have differing lengths, a label is null, or
+    //      the nodes don't form a preorder tree: every feature must be LEAF or an index into
+    //      'features', every label node must point into 'labels', and every decision node must
+    //      have a left child right after it and a right child after that, within the tree
+    public CompiledTree(String[] features, String[] labels, int[] feature, double[] threshold,
+                        int[] next) {
+        if (features == null || labels == null || feature == null || threshold == null
+                || next == null) {
+            throw new IllegalArgumentException();
+        }
+        if (feature.length != threshold.length || feature.length != next.length) {
+            throw new IllegalArgumentException();
+        }
+        for (String label : labels) {
+            if (label == null) {
+                throw new IllegalArgumentException("Null label");
+            }
+        }
+        CompiledTree.checkStructure(features.length, labels.length, feature, next);
+        this.features = features;
+        this.featureIds = new int[features.length];
+        for (int i = 0; i < features.length; i++) {
+            // Identical training texts with different labels leave a null feature behind
+            this.featureIds[i] = features[i] == null ? -1 : Vocabulary.intern(features[i]);
+        }
+        this.labels = labels;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.next = next;
+
+        int slots = Integer.highestOneBit(Math.max(features.length, 1) * 4 - 1) << 1;
+        this.slotKeys = new int[slots];
+        this.slotValues = new int[slots];
+        for (int i = 0; i < features.length; i++) {
+            int id = featureIds[i];
+            if (id >= 0) {
+                int slot = slotOf(id);
+                if (slotKeys[slot] == 0) {
+                    slotKeys[slot] = id + 1;
+                    slotValues[slot] = i;
+                }
+            }
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(features.length));
+        this.hits = Metrics.ENABLED ? new LongAdder[feature.length] : null;
+        if (Metrics.ENABLED) {
+            for (int i = 0; i < feature.length; i++) {
+                hits[i] = new LongAdder();
+            }
+        }
+    }
+
+    // Returns the classification label this tree predicts for the provided 'input', or "" if
+    //      the tree has no nodes.
+    // 'input' should be non-null.
+    public String classify(TextBlock input) {
+        if (feature.length == 0) {
+            return "";
+        }
+        return labels[labelOf(input)];
+    }
+
+    // Returns the index in getLabels() of the label this tree predicts for the provided 'input'
+    // 'input' should be non-null.
+    // Throws an IllegalStateException
+    //      If the tree has no nodes
+    public int labelOf(TextBlock input) {
+        if (feature.length == 0) {
+            throw new IllegalStateException("The tree has no nodes");
+        }
+        TreeGenerator.Walker generated = walker;
+        if (generated != null) {
+            return generated.leaf(input);
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        int depth = 0;
+        int i = 0;
+        int f;
+        while ((f = feature[i]) != LEAF) {
+            if (Metrics.ENABLED) {
+                hits[i].increment();
+                depth++;
+            }
+            i = input.get(featureIds[f]) < threshold[i] ? i + 1 : next[i];
+        }
+        if (Metrics.ENABLED) {
+            recordTraversal(i, depth, start);
+        }
+        return next[i];
+    }
+
+    // Returns the classification label this tree predicts for the provided raw text, or "" if
+    //      the tree has no nodes. This gives the same label as classify(new TextBlock(text)),
+    //      but only makes one pass over the text: it counts the tokens that are features of
+    //      this tree, plus the total number of tokens, without creating any Strings.
+    // 'text' should be non-null.
+    public String classify(CharSequence text) {
+        if (feature.length == 0) {
+            return "";
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Scratch s = scratch.get();
+        int[] counts = s.counts;
+        Arrays.fill(counts, 0);
+        Tokenizer tokens = s.tokens;
+        tokens.reset(text);
+        int total = 0;
+        while (tokens.next()) {
+            total++;
+            int id = tokens.id();
+            if (id >= 0) {
+                int f = featureOf(id);
+                if (f >= 0) {
+                    counts[f]++;
+                }
+            }
+        }
+        tokens.reset("");
+        if (Metrics.ENABLED) {
+            long scanned = System.nanoTime();
+            Metrics.TOKENIZE.record(scanned - start);
+            start = scanned;
+        }
+        return labels[walk(counts, total, start)];
+    }
+
+    // Returns the Vocabulary ID of every feature of this tree, at the index counts are given at
+    //      by labelOf(int[], int), or -1 for a null feature
+    public int[] getFeatureIds() {
+        return featureIds.clone();
+    }
+
+    // Returns the index in getLabels() of the label this tree predicts for a text with the given
+    //      total number of words, holding each feature counts[f] times, where f is the index of
+    //      the feature in getFeatureIds(). This is the walk classify(CharSequence) makes once it
+    //      has counted the features, for callers that count them for several trees at once.
+    // 'counts' should be non-null and hold at least as many counts as there are features.
+    // Throws an IllegalStateException
+    //      If the tree has no nodes
+    public int labelOf(int[] counts, int totalWords) {
+        if (feature.length == 0) {
+            throw new IllegalStateException("The tree has no nodes");
+        }
+        return walk(counts, totalWords, Metrics.ENABLED ? System.nanoTime() : 0);
+    }
+
+    // Helper method - walks the tree for a text with the given feature counts and total number
+    //      of words, with generated code if there is some, and returns the index of the label
+    //      reached. 'start' is when the walk started, for the metrics.
+    private int walk(int[] counts, int total, long start) {
+        TreeGenerator.Walker generated = walker;
+        double totalWords = total;
+        if (generated != null && total != 0) {
+            return generated.leaf(counts, totalWords);
+        }
+        int depth = 0;
+        int i = 0;
+        int f;
+        while ((f = feature[i]) != LEAF) {
+            if (Metrics.ENABLED) {
+                hits[i].increment();
+                depth++;
+            }
+            double probability = totalWords != 0 ? counts[f] / totalWords : 0;
+            i = probability < threshold[i] ? i + 1 : next[i];
+        }
+        if (Metrics.ENABLED) {
+            recordTraversal(i, depth, start);
+        }
+        return next[i];
+    }
+
+    // Generates bytecode for this tree, which both classify methods use from then on. Returns
+    //      true if the tree has generated code, or false if it's empty or too large for it, or
+    //      metrics are enabled (generated code doesn't count node visits). Without generated code
+    //      the tree keeps being walked as before.
+    public synchronized boolean generate() {
+        if (!generateTried && !Metrics.ENABLED) {
+            generateTried = true;
+            walker = TreeGenerator.generate(feature, threshold, next, featureIds);
+        }
+        return walker != null;
+    }
+
+    // Returns how many times the decision nodes of each feature word have been visited while
+    //      classifying with this tree, most visited first. Empty unless Metrics.ENABLED.
+    public Map<String, Long> featureHits() {
+        Map<String, Long> byFeature = new HashMap<>();
+        if (Metrics.ENABLED) {
+            for (int i = 0; i < feature.length; i++) {
+                int f = feature[i];
+                if (f != LEAF && features[f] != null) {
+                    byFeature.merge(features[f], hits[i].sum(), Long::sum);
+                }
+            }
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(byFeature.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> sorted = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return sorted;
+    }
+
+    // Helper method - records a finished walk of the tree that ended at leaf 'i' after 'depth'
+    //      decision nodes and started at time 'start'. Only called when Metrics.ENABLED.
+    private void recordTraversal(int i, int depth, long start) {
+        hits[i].increment();
+        Metrics.TRAVERSE.record(System.nanoTime() - start);
+        Metrics.DEPTH.record(depth);
+    }
+
+    // Returns a tree that predicts exactly the same label as this one for every input, without
+    //      the nodes that can't affect a prediction:
+    //      - decision nodes that can only go one way, because every probability lies between 0
+    //        and 1 and the decisions above them on the path have already bounded the probability
+    //        of the same feature word, are replaced by the one subtree that can be reached
+    //      - decision nodes whose reachable leaves all have the same label are replaced by a
+    //        single leaf of that label
+    //      Feature words and labels that are no longer used are left out.
+    public CompiledTree simplify() {
+        int n = feature.length;
+        if (n == 0) {
+            return this;
+        }
+        byte[] ways = reachableWays();
+
+        // Label of every leaf reachable below each node if they all have the same one, or -1.
+        //      Children come after their parent in preorder, so a backward pass sees them first.
+        int[] uniform = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            if (feature[i] == LEAF) {
+                uniform[i] = next[i];
+            } else if (ways[i] == LEFT) {
+                uniform[i] = uniform[i + 1];
+            } else if (ways[i] == RIGHT) {
+                uniform[i] = uniform[next[i]];
+            } else {
+                uniform[i] = uniform[i + 1] == uniform[next[i]] ? uniform[i + 1] : -1;
+            }
+        }
+
+        int[] newFeature = new int[n];
+        double[] newThreshold = new double[n];
+        int[] newNext = new int[n];
+        Map<Integer, Integer> featureIndex = new LinkedHashMap<>();
+        Map<Integer, Integer> labelIndex = new LinkedHashMap<>();
+        int size = 0;
+        // Old nodes to write next, and ~(new node) whose right child is to be written next
+        int[] stack = new int[n + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int i = stack[--top];
+            if (i < 0) {
+                newNext[~i] = size;
+                continue;
+            }
+            while (uniform[i] < 0 && ways[i] != BOTH) {
+                i = ways[i] == LEFT ? i + 1 : next[i];
+            }
+            if (uniform[i] >= 0) {
+                newFeature[size] = LEAF;
+                newNext[size] = labelIndex.computeIfAbsent(uniform[i], l -> labelIndex.size());
+            } else {
+                newFeature[size] = featureIndex.computeIfAbsent(feature[i],
+                                                                f -> featureIndex.size());
+                newThreshold[size] = threshold[i];
+                stack[top++] = next[i];
+                stack[top++] = ~size;
+                stack[top++] = i + 1;
+            }
+            size++;
+        }
+
+        String[] newFeatures = new String[featureIndex.size()];
+        for (Map.Entry<Integer, Integer> entry : featureIndex.entrySet()) {
+            newFeatures[entry.getValue()] = features[entry.getKey()];
+        }
+        String[] newLabels = new String[labelIndex.size()];
+        for (Map.Entry<Integer, Integer> entry : labelIndex.entrySet()) {
+            newLabels[entry.getValue()] = labels[entry.getKey()];
+        }
+        return new CompiledTree(newFeatures, newLabels, Arrays.copyOf(newFeature, size),
+                                Arrays.copyOf(newThreshold, size), Arrays.copyOf(newNext, size));
+    }
+
+    // Helper method - returns which ways (LEFT, RIGHT or BOTH) each decision node can go given
+    //      the decisions above it, or 0 for nodes that can't be reached at all. Walks the tree
+    //      keeping, for every feature, the range [low, high) its probability must lie in to get
+    //      to the current node. Leaves that can be reached are marked BOTH.
+    private byte[] reachableWays() {
+        int n = feature.length;
+        byte[] ways = new byte[n];
+        double[] low = new double[features.length];
+        double[] high = new double[features.length];
+        for (int f = 0; f < features.length; f++) {
+            // Words that are no feature (null) always have a probability of 0
+            high[f] = featureIds[f] < 0 ? Double.MIN_VALUE : Math.nextUp(1.0);
+        }
+        // The bound replaced on the way into the left (2 * node) or right (2 * node + 1) child
+        double[] saved = new double[2 * n];
+        // Steps still to take, as pairs of (step, node for VISIT or child number otherwise)
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = VISIT;
+        stack[top++] = 0;
+        while (top > 0) {
+            int operand = stack[--top];
+            int step = stack[--top];
+            if (step != VISIT) {
+                int f = feature[operand >> 1];
+                boolean toLeft = (operand & 1) == 0;
+                if (step == RESTORE) {
+                    (toLeft ? high : low)[f] = saved[operand];
+                } else if (toLeft) {
+                    // The left child takes probabilities below the threshold, the right the rest
+                    saved[operand] = high[f];
+                    high[f] = Math.min(high[f], threshold[operand >> 1]);
+                } else {
+                    saved[operand] = low[f];
+                    low[f] = Math.max(low[f], threshold[operand >> 1]);
+                }
+                continue;
+            }
+            int i = operand;
+            if (feature[i] == LEAF) {
+                ways[i] = BOTH;
+                continue;
+            }
+            int f = feature[i];
+            double t = threshold[i];
+            // Every comparison with a NaN threshold is false, so those always go right
+            boolean left = low[f] < t;
+            boolean right = !(high[f] <= t);
+            ways[i] = (byte) ((left ? LEFT : 0) | (right ? RIGHT : 0));
+            if (top + 12 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // Pushed in reverse: narrow, visit and restore the left child, then the right one
+            if (right && Double.isNaN(t)) {
+                top = push(stack, top, VISIT, next[i]);
+            } else if (right) {
+                top = push(stack, top, RESTORE, 2 * i + 1);
+                top = push(stack, top, VISIT, next[i]);
+                top = push(stack, top, NARROW, 2 * i + 1);
+            }
+            if (left) {
+                top = push(stack, top, RESTORE, 2 * i);
+                top = push(stack, top, VISIT, i + 1);
+                top = push(stack, top, NARROW, 2 * i);
+            }
+        }
+        return ways;
+    }
+
+    // Helper method - pushes a step of reachableWays() onto its stack, returning the new top
+    private static int push(int[] stack, int top, int step, int node) {
+        stack[top++] = step;
+        stack[top++] = node;
+        return top;
+    }
+
+    // Returns the number of nodes, leaves and decisions on the way to each leaf of this tree
+    public Shape shape() {
+        int n = feature.length;
+        int[] depth = new int[n];
+        int leaves = 0;
+        long totalDepth = 0;
+        int maxDepth = 0;
+        for (int i = 0; i < n; i++) {
+            if (feature[i] == LEAF) {
+                leaves++;
+                totalDepth += depth[i];
+                maxDepth = Math.max(maxDepth, depth[i]);
+            } else {
+                depth[i + 1] = depth[i] + 1;
+                depth[next[i]] = depth[i] + 1;
+            }
+        }
+        return new Shape(n, leaves, leaves == 0 ? 0 : (double) totalDepth / leaves, maxDepth);
+    }
+
+    // Returns every distinct label of this tree, indexed as by labelOf()
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(Arrays.asList(labels));
+    }
+
+    // Returns the number of nodes (decision and label) in this tree
+    public int size() {
+        return feature.length;
+    }
+
+    // Returns an estimate of the bytes of heap this tree retains, assuming a 64-bit JVM with
+    //      compressed references. Per-thread classify buffers are not counted.
+    public long retainedBytes() {
+        long bytes = 48 + arrayBytes(features.length, 4) + arrayBytes(labels.length, 4);
+        for (String word : features) {
+            bytes += stringBytes(word);
+        }
+        for (String label : labels) {
+            bytes += stringBytes(label);
+        }
+        bytes += arrayBytes(featureIds.length, 4) + arrayBytes(slotKeys.length, 4) * 2;
+        bytes += arrayBytes(feature.length, 4) * 2 + arrayBytes(threshold.length, 8);
+        return bytes;
+    }
+
+    // Helper method - returns the estimated size of an array with the given number of elements
+    private static long arrayBytes(int length, int elementBytes) {
+        return (16 + (long) length * elementBytes + 7) & ~7L;
+    }
+
+    // Helper method - returns the estimated size of the given String and its characters
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 24 + arrayBytes(value.length(), 2);
+    }
+
+    // Writes this tree to the given PrintStream in the text format read by the
+    //      Classifier(Scanner) constructor. Decision nodes are written as a "Feature: " line and
+    //      a "Threshold: " line, label nodes as just their label, in preorder.
+    // 'output' should be non-null.
+    public void saveText(PrintStream output) {
+        String newLine = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < feature.length; i++) {
+            if (feature[i] == LEAF) {
+                text.append(labels[next[i]]).append(newLine);
+            } else {
+                text.append("Feature: ").append(features[feature[i]]).append(newLine);
+                text.append("Threshold: ").append(threshold[i]).append(newLine);
+            }
+            if (text.length() >= TEXT_CHUNK) {
+                output.print(text);
+                text.setLength(0);
+            }
+        }
+        output.print(text);
+        output.flush();
+    }
+
+    // Writes this tree to the file with the given name in the binary format described above,
+    //      replacing the file if it already exists.
+    // 'fileName' should be non-null.
+    // Throws an IOException
+    //      If the file can't be written
+    public void saveBinary(String fileName) throws IOException {
+        byte[][] strings = new byte[features.length + labels.length][];
+        int stringBytes = 0;
+        for (int i = 0; i < strings.length; i++) {
+            String value = i < features.length ? features[i] : labels[i - features.length];
+            strings[i] = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            stringBytes += Integer.BYTES + (value == null ? 0 : strings[i].length);
+        }
+        int header = 5 * Integer.BYTES + stringBytes;
+        int nodes = header + padding(header) + feature.length * (Double.BYTES + 2 * Integer.BYTES);
+
+        ByteBuffer buffer = ByteBuffer.allocate(nodes + Long.BYTES);
+        buffer.putInt(MAGIC).putInt(BINARY_VERSION);
+        buffer.putInt(feature.length).putInt(features.length).putInt(labels.length);
+        for (byte[] string : strings) {
+            if (string == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(string.length).put(string);
+            }
+        }
+        buffer.position(buffer.position() + padding(header));
+        buffer.asDoubleBuffer().put(threshold);
+        buffer.position(buffer.position() + feature.length * Double.BYTES);
+        buffer.asIntBuffer().put(feature).put(next);
+        buffer.position(nodes);
+        buffer.putLong(checksum(buffer.array(), nodes));
+        buffer.flip();
+
+        try (FileChannel out = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    // Returns a new CompiledTree read from the file with the given name, which should have been
+    //      written by saveBinary(). The file is memory-mapped and the node arrays are copied out
+    //      of it in bulk.
+    // 'fileName' should be non-null.
+    // Throws an IOException
+    //      If the file can't be read, isn't a binary model file of a supported version, its
+    //      checksum doesn't match its contents, or the nodes it holds don't form a valid tree
+    public static CompiledTree loadBinary(String fileName) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel in = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(fileName + " is not a binary model file");
+            }
+            int version = buffer.getInt();
+            if (version != BINARY_VERSION) {
+                throw new IOException("Unsupported binary model version " + version);
+            }
+            int end = buffer.limit() - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(0).limit(end));
+            if (crc.getValue() != buffer.getLong(end)) {
+                throw new IOException(fileName + " is corrupted (checksum mismatch)");
+            }
+
+            int nodeCount = buffer.getInt();
+            int featureCount = buffer.getInt();
+            int labelCount = buffer.getInt();
+            String[] features = readStrings(buffer, featureCount);
+            String[] labels = readStrings(buffer, labelCount);
+            buffer.position(buffer.position() + padding(buffer.position()));
+
+            double[] threshold = new double[nodeCount];
+            int[] feature = new int[nodeCount];
+            int[] next = new int[nodeCount];
+            buffer.asDoubleBuffer().get(threshold);
+            buffer.position(buffer.position() + nodeCount * Double.BYTES);
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.get(feature);
+            ints.get(next);
+            return new CompiledTree(features, labels, feature, threshold, next);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException(fileName + " is truncated or malformed", e);
+        }
+    }
+
+    // Helper method - checks that the node arrays form a tree that classifying can walk: since
+    //      every decision node's children come after it and inside the arrays, every walk ends
+    //      at a label node
+    // Throws an IllegalArgumentException
+    //      If any node points outside the tree, 'features' or 'labels', or back up the tree
+    private static void checkStructure(int featureCount, int labelCount, int[] feature,
+                                       int[] next) {
+        int n = feature.length;
+        for (int i = 0; i < n; i++) {
+            if (feature[i] == LEAF) {
+                if (next[i] < 0 || next[i] >= labelCount) {
+                    throw new IllegalArgumentException("Node " + i + " has no valid label");
+                }
+            } else if (feature[i] < 0 || feature[i] >= featureCount) {
+                throw new IllegalArgumentException("Node " + i + " has no valid feature");
+            } else if (i + 1 >= n || next[i] <= i + 1 || next[i] >= n) {
+                throw new IllegalArgumentException("Node " + i + " has no valid children");
+            }
+        }
+    }
+
+    // Helper method - returns the index in 'features' of the feature with the given Vocabulary
+    //      ID, or -1 if it isn't a feature of this tree
+    private int featureOf(int id) {
+        int mask = slotKeys.length - 1;
+        for (int slot = spread(id) & mask; slotKeys[slot] != 0; slot = (slot + 1) & mask) {
+            if (slotKeys[slot] == id + 1) {
+                return slotValues[slot];
+            }
+        }
+        return -1;
+    }
+
+    // Helper method - returns the first slot to look at for the given Vocabulary ID
+    private int slotOf(int id) {
+        int mask = slotKeys.length - 1;
+        int slot = spread(id) & mask;
+        while (slotKeys[slot] != 0 && slotKeys[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Helper method - scatters consecutive IDs across the slot table
+    private static int spread(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Helper method - reads the given number of length-prefixed UTF-8 strings from the buffer
+    private static String[] readStrings(ByteBuffer buffer, int count) {
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return strings;
+    }
+
+    // Helper method - returns the number of bytes needed after 'offset' to reach a multiple of 8
+    private static int padding(int offset) {
+        return (Double.BYTES - offset % Double.BYTES) % Double.BYTES;
+    }
+
+    // Helper method - returns the CRC-32 of the first 'length' bytes of the given array
+    private static long checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    // This class describes the shape of a tree: its number of nodes and leaves, and the average
+    //      (over its leaves) and greatest number of decisions on the way to a leaf
+    public static class Shape {
+        private final int nodes;
+        private final int leaves;
+        private final double averageDepth;
+        private final int maxDepth;
+
+        // Constructs a new Shape with the given measures
+        private Shape(int nodes, int leaves, double averageDepth, int maxDepth) {
+            this.nodes = nodes;
+            this.leaves = leaves;
+            this.averageDepth = averageDepth;
+            this.maxDepth = maxDepth;
+        }
+
+        // Returns the number of nodes of the tree
+        public int getNodes() {
+            return nodes;
+        }
+
+        // Returns the number of leaves of the tree
+        public int getLeaves() {
+            return leaves;
+        }
+
+        // Returns the average number of decisions on the way to a leaf
+        public double getAverageDepth() {
+            return averageDepth;
+        }
+
+        // Returns the greatest number of decisions on the way to a leaf
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes, %d leaves, depth %.2f average, %d max", nodes, leaves,
+                                 averageDepth, maxDepth);
+        }
+    }
+
+    // This class holds the buffers one thread reuses across calls to classify(CharSequence)
+    private static class Scratch {
+        private final int[] counts;
+        private final Tokenizer tokens;
+
+        // Constructs a new Scratch with room to count the given number of features
+        private Scratch(int featureCount) {
+            this.counts = new int[featureCount];
+            this.tokens = new Tokenizer("");
+        }
+    }
+}
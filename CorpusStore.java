@@ -0,0 +1,601 @@
+import java.util.*;
+import java.util.stream.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+// This class represents a tokenized, labeled corpus kept in a columnar file outside the heap, for
+//      training and evaluating on datasets that don't fit in memory. A CSV file is tokenized once
+//      by write(); open() then maps the file into memory, and every document is read back as a
+//      TextBlock that holds nothing but its position in the corpus. Its words are read from the
+//      mapped file whenever they are needed, so the heap only holds the vocabulary, the model
+//      being trained and whichever documents are in use at the time; the operating system pages
+//      the rest in and out.
+// Words are numbered by the corpus itself, in the order they first appear in it, since
+//      Vocabulary IDs are only valid within one process. Writing a corpus numbers them in a table
+//      of its own, so it doesn't fill the Vocabulary; opening a corpus interns its words and
+//      keeps a table between the two numberings.
+// File layout (big-endian), a fixed header followed by one column after another:
+//      int magic, int version, long documents, long entries, int words, int labels,
+//          long offset of the string tables
+//      long[documents + 1]  first entry of every document, then the total number of entries
+//      int[documents]       total number of words (tokens) of every document
+//      int[entries]         corpus word numbers, ascending within each document
+//      int[entries]         times each word appeared in its document
+//      int[entries]         order in which each word first appeared in its document
+//      byte[documents]      label number of every document
+//      the words, then the labels, each as an int number of bytes followed by that many bytes
+//          of UTF-8, so words and labels of any length can be stored (version 1 files, which
+//          used DataOutput.writeUTF, can still be read)
+public class CorpusStore {
+    private static final int MAGIC = 0x53504353;        // "SPCS"
+    private static final int VERSION = 2;
+    // Version whose words and labels are modified UTF-8 Strings of at most 64 KB
+    private static final int SHORT_STRINGS_VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    // Labels are stored in a single byte per document
+    private static final int MAX_LABELS = 256;
+
+    private final String fileName;
+    private final int documents;
+    private final String[] labelNames;
+    private final int[] localToGlobal;
+    private final int[] globalToLocal;
+    private final Column starts;
+    private final Column totals;
+    private final Column ids;
+    private final Column counts;
+    private final Column ranks;
+    private final Column labels;
+
+    private CorpusStore(String fileName, int documents, long entries, String[] words,
+                        String[] labelNames, FileChannel channel) throws IOException {
+        this.fileName = fileName;
+        this.documents = documents;
+        this.labelNames = labelNames;
+        this.localToGlobal = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            localToGlobal[i] = Vocabulary.intern(words[i]);
+        }
+        this.globalToLocal = new int[Vocabulary.size()];
+        Arrays.fill(globalToLocal, -1);
+        for (int i = 0; i < words.length; i++) {
+            globalToLocal[localToGlobal[i]] = i;
+        }
+        long position = HEADER_BYTES;
+        this.starts = new Column(channel, position, 8L * (documents + 1));
+        this.totals = new Column(channel, position += starts.bytes, 4L * documents);
+        this.ids = new Column(channel, position += totals.bytes, 4 * entries);
+        this.counts = new Column(channel, position += ids.bytes, 4 * entries);
+        this.ranks = new Column(channel, position += counts.bytes, 4 * entries);
+        this.labels = new Column(channel, position += ranks.bytes, documents);
+    }
+
+    // Tokenizes the rows of the given CSV file, taking each label from 'labelIndex' and each
+    //      text from 'contentIndex', and writes them in file order to a corpus file of the given
+    //      name. Rows are read one at a time, so the CSV file may be larger than the heap.
+    //      Returns the number of documents written.
+    // 'csvFile' and 'storeFile' should be non-null.
+    // Throws an IOException
+    //      If the CSV file can't be read or the corpus file can't be written, or there are more
+    //      than 256 distinct labels
+    public static int write(String csvFile, int labelIndex, int contentIndex, String storeFile)
+            throws IOException {
+        Path target = Paths.get(storeFile).toAbsolutePath();
+        Path directory = target.getParent();
+        List<Path> parts = new ArrayList<>();
+        try {
+            for (int i = 0; i < 6; i++) {
+                parts.add(Files.createTempFile(directory, "corpus", ".part"));
+            }
+            ColumnWriter writer = new ColumnWriter(parts);
+            try (Stream<List<String>> rows = CsvReader.stream(csvFile)) {
+                Iterator<List<String>> it = rows.iterator();
+                while (it.hasNext()) {
+                    List<String> row = it.next();
+                    writer.add(row.get(contentIndex), row.get(labelIndex));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                writer.close();
+            }
+            writer.assemble(target);
+            return writer.documents;
+        } finally {
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    // Returns the corpus in the given file, mapped into memory
+    // 'fileName' should be non-null.
+    // Throws an IOException
+    //      If the file can't be read or isn't a corpus file
+    public static CorpusStore open(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                                                     StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.read(header, 0) < HEADER_BYTES || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a corpus file: " + fileName);
+            }
+            header.position(4);
+            int version = header.getInt();
+            if (version != VERSION && version != SHORT_STRINGS_VERSION) {
+                throw new IOException("Unsupported corpus version: " + fileName);
+            }
+            long documents = header.getLong();
+            long entries = header.getLong();
+            int wordCount = header.getInt();
+            int labelCount = header.getInt();
+            long stringsOffset = header.getLong();
+            if (documents < 0 || documents >= Integer.MAX_VALUE || entries < 0 || wordCount < 0
+                    || labelCount < 0 || labelCount > MAX_LABELS
+                    || stringsOffset != HEADER_BYTES + 13 * documents + 8 + 12 * entries
+                    || stringsOffset > channel.size()) {
+                throw new IOException("Corrupt corpus file: " + fileName);
+            }
+            channel.position(stringsOffset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            long stringBytes = channel.size() - stringsOffset;
+            String[] words = new String[wordCount];
+            for (int i = 0; i < wordCount; i++) {
+                words[i] = readString(in, version, stringBytes, fileName);
+            }
+            String[] labelNames = new String[labelCount];
+            for (int i = 0; i < labelCount; i++) {
+                labelNames[i] = readString(in, version, stringBytes, fileName);
+            }
+            // Mappings stay valid once the channel is closed
+            return new CorpusStore(fileName, (int) documents, entries, words, labelNames, channel);
+        }
+    }
+
+    // Builds a corpus file from a CSV file, or trains a Classifier on one corpus file and tests
+    //      it on another, printing the time taken and the heap in use.
+    // Arguments: write [CSV file] [corpus file]
+    //        or: evaluate [training corpus file] [testing corpus file]
+    // Throws an IOException
+    //      If a file can't be read or written
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("write")) {
+            long start = System.nanoTime();
+            int documents = write(args[1], Client.LABEL_INDEX, Client.CONTENT_INDEX, args[2]);
+            System.out.printf("Wrote %d documents to %s (%d bytes) in %.1f ms%n", documents,
+                              args[2], new File(args[2]).length(),
+                              (System.nanoTime() - start) / 1e6);
+        } else if (args.length == 3 && args[0].equals("evaluate")) {
+            CorpusStore train = open(args[1]);
+            CorpusStore test = open(args[2]);
+            long start = System.nanoTime();
+            Classifier c = new Classifier(train.data(), train.labels());
+            c.freeze();
+            long trained = System.nanoTime();
+            Map<String, Double> accuracy = c.calculateAccuracyParallel(test.data(), test.labels());
+            long tested = System.nanoTime();
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("Trained on %s in %.1f ms, tested on %s in %.1f ms%n", train,
+                              (trained - start) / 1e6, test, (tested - trained) / 1e6);
+            System.out.println(accuracy);
+            System.out.printf("Heap in use: %d MB%n",
+                              (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        } else {
+            System.out.println("Usage: CorpusStore write <CSV file> <corpus file>");
+            System.out.println("       CorpusStore evaluate <training corpus> <testing corpus>");
+        }
+    }
+
+    // Returns the number of documents in this corpus
+    public int size() {
+        return documents;
+    }
+
+    // Returns the number of distinct words in this corpus
+    public int wordCount() {
+        return localToGlobal.length;
+    }
+
+    // Returns the given document as a TextBlock that reads its words from this corpus
+    // Throws an IndexOutOfBoundsException
+    //      If there is no such document
+    public TextBlock get(int document) {
+        Objects.checkIndex(document, documents);
+        return new StoredBlock(this, document);
+    }
+
+    // Returns the label of the given document
+    // Throws an IndexOutOfBoundsException
+    //      If there is no such document
+    public String label(int document) {
+        Objects.checkIndex(document, documents);
+        return labelNames[labels.getByte(document) & 0xFF];
+    }
+
+    // Returns a read-only List of every document, in corpus order. Its elements are created on
+    //      demand, so the List itself takes no memory.
+    public List<TextBlock> data() {
+        return new AbstractList<TextBlock>() {
+            public TextBlock get(int index) {
+                return CorpusStore.this.get(index);
+            }
+
+            public int size() {
+                return documents;
+            }
+        };
+    }
+
+    // Returns a read-only List of the label of every document, in corpus order
+    public List<String> labels() {
+        return new AbstractList<String>() {
+            public String get(int index) {
+                return label(index);
+            }
+
+            public int size() {
+                return documents;
+            }
+        };
+    }
+
+    public String toString() {
+        return String.format("%s (%d documents, %d words)", fileName, documents,
+                             localToGlobal.length);
+    }
+
+    // Helper method - reads a word or label of a corpus file of the given version, where the
+    //      string tables take up 'stringBytes' bytes
+    // Throws an IOException
+    //      If the file ends or the length is out of range
+    private static String readString(DataInputStream in, int version, long stringBytes,
+                                     String fileName) throws IOException {
+        if (version == SHORT_STRINGS_VERSION) {
+            return in.readUTF();
+        }
+        int length = in.readInt();
+        if (length < 0 || length > stringBytes) {
+            throw new IOException("Corrupt corpus file: " + fileName);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Helper method - writes a word or label in the format read by readString
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Helper method - returns the frequency of the word with the given Vocabulary ID in the given
+    //      document, found by binary search over the document's entries
+    private double frequency(int document, int wordId) {
+        if (wordId < 0 || wordId >= globalToLocal.length || globalToLocal[wordId] < 0) {
+            return 0;
+        }
+        int word = globalToLocal[wordId];
+        long low = starts.getLong(document);
+        long high = starts.getLong(document + 1) - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int id = ids.getInt(mid);
+            if (id < word) {
+                low = mid + 1;
+            } else if (id > word) {
+                high = mid - 1;
+            } else {
+                return counts.getInt(mid) / (double) totals.getInt(document);
+            }
+        }
+        return 0;
+    }
+
+    // Helper method - returns the given document copied into heap arrays, with its words
+    //      renumbered by Vocabulary ID and sorted accordingly
+    private TextBlock copy(int document) {
+        long start = starts.getLong(document);
+        int size = (int) (starts.getLong(document + 1) - start);
+        // Sorted by Vocabulary ID, with each entry's index alongside in the low half
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (long) localToGlobal[ids.getInt(start + i)] << 32 | i;
+        }
+        Arrays.sort(order);
+        int[] wordIds = new int[size];
+        int[] wordCounts = new int[size];
+        int[] wordRanks = new int[size];
+        for (int i = 0; i < size; i++) {
+            int entry = (int) order[i];
+            wordIds[i] = (int) (order[i] >>> 32);
+            wordCounts[i] = counts.getInt(start + entry);
+            wordRanks[i] = ranks.getInt(start + entry);
+        }
+        return new TextBlock(wordIds, wordCounts, wordRanks, totals.getInt(document));
+    }
+
+    // This class is a document of a CorpusStore, holding only the corpus and its position in
+    //      it. Lookups read the mapped file directly; anything else works on a copy in the heap.
+    private static class StoredBlock extends TextBlock {
+        private final CorpusStore store;
+        private final int document;
+
+        private StoredBlock(CorpusStore store, int document) {
+            this.store = store;
+            this.document = document;
+        }
+
+        public double get(int wordId) {
+            return store.frequency(document, wordId);
+        }
+
+        public long retainedBytes() {
+            // Object header, four references, a double and an int; the words stay in the file
+            return 48;
+        }
+
+        public int wordCount() {
+            return store.totals.getInt(document);
+        }
+
+        public void forEachWord(WordAction action) {
+            onHeap().forEachWord(action);
+        }
+
+        public Set<String> getFeatures() {
+            return onHeap().getFeatures();
+        }
+
+        public boolean containsFeature(String word) {
+            return get(Vocabulary.id(word)) > 0;
+        }
+
+        public String findBiggestDifference(TextBlock other) {
+            return onHeap().findBiggestDifference(other);
+        }
+
+        protected long tieBreakKey(TextBlock other, int word, int union) {
+            return onHeap().tieBreakKey(other, word, union);
+        }
+
+        protected TextBlock onHeap() {
+            return store.copy(document);
+        }
+    }
+
+    // This class is a column of the corpus file, mapped in chunks since a single mapping can't
+    //      exceed 2 GB. Chunk sizes are a power of two, so no value spans two chunks.
+    private static class Column {
+        private static final int CHUNK_SHIFT = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+        private final ByteBuffer[] chunks;
+        private final long bytes;
+
+        private Column(FileChannel channel, long position, long bytes) throws IOException {
+            this.bytes = bytes;
+            this.chunks = new ByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long offset = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + offset,
+                                        Math.min(bytes - offset, 1L << CHUNK_SHIFT));
+            }
+        }
+
+        private long getLong(long index) {
+            long at = index << 3;
+            return chunks[(int) (at >>> CHUNK_SHIFT)].getLong((int) (at & CHUNK_MASK));
+        }
+
+        private int getInt(long index) {
+            long at = index << 2;
+            return chunks[(int) (at >>> CHUNK_SHIFT)].getInt((int) (at & CHUNK_MASK));
+        }
+
+        private byte getByte(long index) {
+            return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+        }
+    }
+
+    // This class writes a corpus file. Every column is first written to its own temporary file,
+    //      since the size of each is only known at the end, and then they are put together.
+    private static class ColumnWriter implements Closeable {
+        private final List<Path> parts;
+        private final DataOutputStream starts;
+        private final DataOutputStream totals;
+        private final DataOutputStream ids;
+        private final DataOutputStream counts;
+        private final DataOutputStream ranks;
+        private final DataOutputStream labels;
+        // Every word of the corpus and its String.hashCode(), by corpus number, and an
+        //      open-addressing table of (corpus number + 1) by hash, so tokens are looked up
+        //      without creating substrings
+        private String[] words;
+        private int[] hashes;
+        private int[] slots;
+        private int wordCount;
+        // For every corpus word, the last document that used it (plus one), and its entry there
+        private int[] lastDocument;
+        private int[] entryOf;
+        private final Map<String, Integer> labelNumbers;
+        private int documents;
+        private long entries;
+        // Entries of the document being added: corpus word numbers in the high half and indexes
+        //      into the other two arrays in the low half, so sorting them orders the entries
+        private long[] order;
+        private int[] entryCounts;
+        private int[] entryRanks;
+        private int pending;
+
+        private ColumnWriter(List<Path> parts) throws IOException {
+            this.parts = parts;
+            this.starts = open(parts.get(0));
+            this.totals = open(parts.get(1));
+            this.ids = open(parts.get(2));
+            this.counts = open(parts.get(3));
+            this.ranks = open(parts.get(4));
+            this.labels = open(parts.get(5));
+            this.words = new String[1024];
+            this.hashes = new int[1024];
+            this.slots = new int[2048];
+            this.lastDocument = new int[1024];
+            this.entryOf = new int[1024];
+            this.labelNumbers = new LinkedHashMap<>();
+            this.order = new long[64];
+            this.entryCounts = new int[64];
+            this.entryRanks = new int[64];
+            starts.writeLong(0);
+        }
+
+        // Appends the document with the given text and label. Its words are numbered as they
+        //      first appear, and counted the same way as by new TextBlock(text).
+        private void add(String text, String label) throws IOException {
+            Integer number = labelNumbers.get(label);
+            if (number == null) {
+                if (labelNumbers.size() == MAX_LABELS) {
+                    throw new IOException("More than " + MAX_LABELS + " distinct labels");
+                }
+                number = labelNumbers.size();
+                labelNumbers.put(label, number);
+            }
+            pending = 0;
+            int total = 0;
+            Tokenizer tokens = new Tokenizer(text);
+            while (tokens.next()) {
+                total++;
+                int word = localId(text, tokens.start(), tokens.end(), tokens.hash());
+                if (lastDocument[word] == documents + 1) {
+                    entryCounts[entryOf[word]]++;
+                } else {
+                    lastDocument[word] = documents + 1;
+                    entryOf[word] = pending;
+                    collect(word);
+                }
+            }
+            Arrays.sort(order, 0, pending);
+            for (int i = 0; i < pending; i++) {
+                ids.writeInt((int) (order[i] >>> 32));
+            }
+            for (int i = 0; i < pending; i++) {
+                counts.writeInt(entryCounts[(int) order[i]]);
+            }
+            for (int i = 0; i < pending; i++) {
+                ranks.writeInt(entryRanks[(int) order[i]]);
+            }
+            entries += pending;
+            starts.writeLong(entries);
+            totals.writeInt(total);
+            labels.writeByte(number);
+            documents++;
+            if (documents == Integer.MAX_VALUE) {
+                throw new IOException("Too many documents");
+            }
+        }
+
+        // Writes the header and the string tables, then every column, to the given file
+        private void assemble(Path target) throws IOException {
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                long stringsOffset = HEADER_BYTES + 13L * documents + 8 + 12 * entries;
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putLong(documents).putLong(entries)
+                      .putInt(wordCount).putInt(labelNumbers.size()).putLong(stringsOffset);
+                header.flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                for (Path part : parts) {
+                    try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                        long size = in.size();
+                        for (long done = 0; done < size; ) {
+                            done += in.transferTo(done, size - done, out);
+                        }
+                    }
+                }
+                DataOutputStream strings = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(out)));
+                for (int i = 0; i < wordCount; i++) {
+                    writeString(strings, words[i]);
+                }
+                for (String label : labelNumbers.keySet()) {
+                    writeString(strings, label);
+                }
+                strings.flush();
+            }
+        }
+
+        public void close() throws IOException {
+            for (DataOutputStream column : List.of(starts, totals, ids, counts, ranks, labels)) {
+                column.close();
+            }
+        }
+
+        // Helper method - adds a word that first appears in the document being added to its
+        //      pending entries, having appeared once so far. Entries are added in the order their
+        //      words first appear, so an entry's index is its rank.
+        private void collect(int word) {
+            if (pending == order.length) {
+                order = Arrays.copyOf(order, pending * 2);
+                entryCounts = Arrays.copyOf(entryCounts, pending * 2);
+                entryRanks = Arrays.copyOf(entryRanks, pending * 2);
+            }
+            order[pending] = (long) word << 32 | pending;
+            entryCounts[pending] = 1;
+            entryRanks[pending] = pending;
+            pending++;
+        }
+
+        // Helper method - returns the corpus number of the word made of the characters of
+        //      'text' from 'start' to 'end', whose String.hashCode() is 'hash', numbering it if
+        //      it's new to the corpus
+        private int localId(String text, int start, int end, int hash) {
+            int length = end - start;
+            int mask = slots.length - 1;
+            int i = (hash ^ (hash >>> 16)) & mask;
+            for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+                String word = words[slot - 1];
+                if (hashes[slot - 1] == hash && word.length() == length
+                        && word.regionMatches(0, text, start, length)) {
+                    return slot - 1;
+                }
+            }
+            if (wordCount == words.length) {
+                words = Arrays.copyOf(words, wordCount * 2);
+                hashes = Arrays.copyOf(hashes, wordCount * 2);
+                lastDocument = Arrays.copyOf(lastDocument, wordCount * 2);
+                entryOf = Arrays.copyOf(entryOf, wordCount * 2);
+            }
+            int word = wordCount++;
+            words[word] = text.substring(start, end);
+            hashes[word] = hash;
+            slots[i] = word + 1;
+            if (2 * wordCount > slots.length) {
+                rehash();
+            }
+            return word;
+        }
+
+        // Helper method - doubles the number of slots of the word table
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int word = 0; word < wordCount; word++) {
+                int i = (hashes[word] ^ (hashes[word] >>> 16)) & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = word + 1;
+            }
+        }
+
+        private static DataOutputStream open(Path part) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(part),
+                                                                 1 << 16));
+        }
+    }
+}
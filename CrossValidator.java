@@ -0,0 +1,269 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+import java.io.*;
+
+// This class runs k-fold cross-validation of the Classifier on a labeled corpus. The corpus is
+//      parsed into TextBlocks once and shared by every fold and every run. For each run, the
+//      datapoints are shuffled with the given seed and dealt into k folds; each fold in turn is
+//      held out for testing while a Classifier is trained on the others. Folds are trained and
+//      tested in parallel, one per core, and since each fold only depends on the seed, a run
+//      with the same seed always gives the same results.
+public class CrossValidator {
+    private final List<TextBlock> data;
+    private final List<String> labels;
+
+    // Constructs a new CrossValidator for the given datapoints and their labels
+    // Throws an IllegalArgumentException
+    //      If either list is null or contains null, or the lists have differing sizes
+    public CrossValidator(List<TextBlock> data, List<String> labels) {
+        if (data == null || labels == null || data.contains(null) || labels.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        if (data.size() != labels.size()) {
+            throw new IllegalArgumentException();
+        }
+        this.data = List.copyOf(data);
+        this.labels = List.copyOf(labels);
+    }
+
+    // Returns a CrossValidator for the rows of the given CSV file, taking each label from
+    //      'labelIndex' and each text from 'contentIndex'. Rows keep their order in the file, and
+    //      their texts are parsed in parallel.
+    // 'fileName' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static CrossValidator fromFile(String fileName, int labelIndex, int contentIndex)
+            throws FileNotFoundException {
+        List<List<String>> rows = CsvReader.read(fileName);
+        List<TextBlock> data = rows.parallelStream()
+                                   .map(row -> new TextBlock(row.get(contentIndex)))
+                                   .collect(Collectors.toList());
+        List<String> labels = rows.stream()
+                                  .map(row -> row.get(labelIndex))
+                                  .collect(Collectors.toList());
+        return new CrossValidator(data, labels);
+    }
+
+    // Runs cross-validation on Client.TRAIN_FILE, or the given file, and prints the accuracy
+    //      and time of every fold followed by the mean and variance of each label's accuracy.
+    // Arguments: [file] [k] [seed], defaulting to Client.TRAIN_FILE, 5 folds and seed 0.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static void main(String[] args) throws FileNotFoundException {
+        String fileName = args.length > 0 ? args[0] : Client.TRAIN_FILE;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        long start = System.nanoTime();
+        CrossValidator validator = fromFile(fileName, Client.LABEL_INDEX, Client.CONTENT_INDEX);
+        System.out.printf("Parsed %d rows in %.1f ms%n", validator.data.size(),
+                          (System.nanoTime() - start) / 1e6);
+        System.out.println(validator.run(k, seed));
+    }
+
+    // Runs k-fold cross-validation with the datapoints shuffled by the given seed, and returns
+    //      the results of every fold
+    // Throws an IllegalArgumentException
+    //      If k is less than 2 or greater than the number of datapoints
+    public Result run(int k, long seed) {
+        if (k < 2 || k > data.size()) {
+            throw new IllegalArgumentException();
+        }
+        int[] order = shuffledIndices(data.size(), seed);
+        int threads = Math.min(k, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "cross-validation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        try {
+            List<Future<Fold>> futures = new ArrayList<>();
+            for (int f = 0; f < k; f++) {
+                int fold = f;
+                futures.add(pool.submit(() -> runFold(order, k, fold)));
+            }
+            List<Fold> folds = new ArrayList<>();
+            for (Future<Fold> future : futures) {
+                folds.add(future.get());
+            }
+            return new Result(folds, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while cross-validating");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Helper method - trains on every fold except 'fold' and tests on 'fold'. Datapoint
+    //      order[i] belongs to fold i % k.
+    private Fold runFold(int[] order, int k, int fold) {
+        long start = System.nanoTime();
+        List<TextBlock> trainData = new ArrayList<>();
+        List<String> trainLabels = new ArrayList<>();
+        List<TextBlock> testData = new ArrayList<>();
+        List<String> testLabels = new ArrayList<>();
+        for (int i = 0; i < order.length; i++) {
+            if (i % k == fold) {
+                testData.add(data.get(order[i]));
+                testLabels.add(labels.get(order[i]));
+            } else {
+                trainData.add(data.get(order[i]));
+                trainLabels.add(labels.get(order[i]));
+            }
+        }
+        Classifier c = new Classifier(trainData, trainLabels);
+        long trained = System.nanoTime();
+        Map<String, Double> accuracy = c.calculateAccuracy(testData, testLabels);
+        long tested = System.nanoTime();
+        // calculateAccuracy leaves out labels that were never classified correctly
+        for (String label : testLabels) {
+            accuracy.putIfAbsent(label, 0.0);
+        }
+        return new Fold(fold, trainData.size(), testData.size(), accuracy, trained - start,
+                        tested - trained);
+    }
+
+    // Helper method - returns the numbers 0 to size - 1 shuffled by the given seed
+    private static int[] shuffledIndices(int size, long seed) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    // This class holds the outcome of one fold: its accuracy for every label it was tested on
+    //      (plus "Overall"), and the wall-clock time training and testing took
+    public static class Fold {
+        private final int index;
+        private final int trainSize;
+        private final int testSize;
+        private final Map<String, Double> accuracy;
+        private final long trainNanos;
+        private final long testNanos;
+
+        private Fold(int index, int trainSize, int testSize, Map<String, Double> accuracy,
+                     long trainNanos, long testNanos) {
+            this.index = index;
+            this.trainSize = trainSize;
+            this.testSize = testSize;
+            this.accuracy = Collections.unmodifiableMap(new TreeMap<>(accuracy));
+            this.trainNanos = trainNanos;
+            this.testNanos = testNanos;
+        }
+
+        // Returns the index of this fold, from 0 to k - 1
+        public int getIndex() {
+            return index;
+        }
+
+        // Returns the accuracy for every label tested, plus "Overall", sorted by label
+        public Map<String, Double> getAccuracy() {
+            return accuracy;
+        }
+
+        // Returns the wall-clock time training took, in nanoseconds
+        public long getTrainNanos() {
+            return trainNanos;
+        }
+
+        // Returns the wall-clock time testing took, in nanoseconds
+        public long getTestNanos() {
+            return testNanos;
+        }
+
+        public String toString() {
+            return String.format("Fold %d: trained on %d in %.1f ms, tested on %d in %.1f ms, %s",
+                                 index, trainSize, trainNanos / 1e6, testSize, testNanos / 1e6,
+                                 accuracy);
+        }
+    }
+
+    // This class holds the outcome of a whole cross-validation run: every Fold, and for every
+    //      label the mean and sample variance of its accuracy over the folds that tested it
+    public static class Result {
+        private final List<Fold> folds;
+        private final Map<String, Double> mean;
+        private final Map<String, Double> variance;
+        private final long wallNanos;
+
+        private Result(List<Fold> folds, long wallNanos) {
+            this.folds = Collections.unmodifiableList(folds);
+            this.wallNanos = wallNanos;
+            Map<String, List<Double>> byLabel = new TreeMap<>();
+            for (Fold fold : folds) {
+                for (Map.Entry<String, Double> entry : fold.accuracy.entrySet()) {
+                    byLabel.computeIfAbsent(entry.getKey(), label -> new ArrayList<>())
+                           .add(entry.getValue());
+                }
+            }
+            Map<String, Double> mean = new TreeMap<>();
+            Map<String, Double> variance = new TreeMap<>();
+            for (Map.Entry<String, List<Double>> entry : byLabel.entrySet()) {
+                List<Double> values = entry.getValue();
+                double sum = 0;
+                for (double value : values) {
+                    sum += value;
+                }
+                double average = sum / values.size();
+                double squares = 0;
+                for (double value : values) {
+                    squares += (value - average) * (value - average);
+                }
+                mean.put(entry.getKey(), average);
+                variance.put(entry.getKey(),
+                             values.size() > 1 ? squares / (values.size() - 1) : 0.0);
+            }
+            this.mean = Collections.unmodifiableMap(mean);
+            this.variance = Collections.unmodifiableMap(variance);
+        }
+
+        // Returns the result of every fold, in fold order
+        public List<Fold> getFolds() {
+            return folds;
+        }
+
+        // Returns the mean accuracy of every label over the folds that tested it
+        public Map<String, Double> getMean() {
+            return mean;
+        }
+
+        // Returns the sample variance of every label's accuracy over the folds that tested it
+        public Map<String, Double> getVariance() {
+            return variance;
+        }
+
+        // Returns the wall-clock time of the whole run, in nanoseconds
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Fold fold : folds) {
+                text.append(fold).append('\n');
+            }
+            for (String label : mean.keySet()) {
+                text.append(String.format("%s: mean %.4f, variance %.6f%n", label,
+                                          mean.get(label), variance.get(label)));
+            }
+            return text.append(String.format("%d folds in %.1f ms", folds.size(),
+                                             wallNanos / 1e6)).toString();
+        }
+    }
+}
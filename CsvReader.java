@@ -1,25 +1,200 @@
 import java.util.*;
+import java.util.stream.*;
 import java.io.*;
+import java.nio.charset.*;
 
-// Parses lines from CSV file, splitting on commas
-public class CsvReader {
-    public static final String COMMA = ",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
+// Parses rows from CSV data one at a time, splitting on commas. Follows RFC 4180: fields may be
+//      wrapped in double quotes, in which case they can contain commas and line breaks, and a
+//      doubled quote ("") inside them stands for a single quote character. The quotes around a
+//      field are not part of its value.
+// Characters are read in a single pass through a small state machine, so only the current row
+//      is ever held in memory.
+public class CsvReader implements Iterator<List<String>>, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // States of the parser between two characters
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final Reader in;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private final StringBuilder field;
+    private List<String> nextRow;
+
+    // Constructs a new CsvReader parsing rows from the given Reader, starting with its very
+    //      first row.
+    // 'in' should be non-null.
+    public CsvReader(Reader in) {
+        this.in = in;
+        this.buffer = new char[BUFFER_SIZE];
+        this.field = new StringBuilder();
+    }
 
     // Reads data from the provided file, converting each line into its own List split on commas.
     //      The returned value can be thought of as a 2d array, just with Lists instead!
+    //      The whole file is held in memory; use stream() to go through large files.
     // 'fileName' should be non-null.
     // Throws a FileNotFoundException
     //      If the provided file doesn't exist
     public static List<List<String>> read(String fileName) throws FileNotFoundException {
-        List<List<String>> lines = new ArrayList<>();
-        
-        Scanner sc = new Scanner(new File(fileName));
-        sc.nextLine();      // Skip the first row since it's just titles
-        
-        while (sc.hasNextLine()) {
-            String line = sc.nextLine();
-            lines.add(Arrays.asList(line.split(COMMA)));
-        }
-        return lines;
+        try (Stream<List<String>> rows = stream(fileName)) {
+            return rows.collect(Collectors.toList());
+        }
+    }
+
+    // Returns a lazy Stream of the rows of the provided file, each converted into its own List
+    //      split on commas. The first row is skipped since it's just titles. The Stream should
+    //      be closed once it's no longer needed so the file gets closed as well.
+    // 'fileName' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static Stream<List<String>> stream(String fileName) throws FileNotFoundException {
+        CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(fileName),
+                                                               StandardCharsets.UTF_8));
+        try {
+            if (reader.hasNext()) {
+                reader.next();      // Skip the first row since it's just titles
+            }
+        } catch (RuntimeException e) {
+            try {
+                reader.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        Spliterator<List<String>> rows = Spliterators.spliteratorUnknownSize(reader,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(rows, false).onClose(reader::closeUnchecked);
+    }
+
+    // Returns true if there is another row to read
+    // Throws an UncheckedIOException
+    //      If reading from the underlying Reader fails
+    public boolean hasNext() {
+        if (nextRow == null) {
+            try {
+                nextRow = parseRow();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextRow != null;
+    }
+
+    // Returns the next row, split into its fields
+    // Throws a NoSuchElementException
+    //      If there are no rows left
+    // Throws an UncheckedIOException
+    //      If reading from the underlying Reader fails
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    // Closes the underlying Reader
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Helper method - closes the underlying Reader, rethrowing any failure unchecked
+    private void closeUnchecked() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Helper method - parses the next row, skipping blank lines. Returns null once the end of
+    //      the input has been reached.
+    private List<String> parseRow() throws IOException {
+        List<String> row = new ArrayList<>();
+        int state = FIELD_START;
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                if (state == FIELD_START && row.isEmpty()) {
+                    return null;
+                }
+                endField(row);
+                return row;
+            }
+            if (state == QUOTED) {
+                if (c == '"') {
+                    state = QUOTE_IN_QUOTED;
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                endField(row);
+                state = FIELD_START;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (state == FIELD_START && row.isEmpty()) {
+                    continue;       // Blank line
+                }
+                endField(row);
+                return row;
+            } else if (state == QUOTE_IN_QUOTED) {
+                // A doubled quote stands for one quote; anything else after the closing quote
+                // is kept as is
+                field.append((char) c);
+                state = c == '"' ? QUOTED : UNQUOTED;
+            } else if (state == FIELD_START && c == '"') {
+                state = QUOTED;
+            } else {
+                field.append((char) c);
+                state = UNQUOTED;
+            }
+        }
+    }
+
+    // Helper method - adds the field read so far to the given row and starts a new one
+    private void endField(List<String> row) {
+        row.add(field.toString());
+        field.setLength(0);
+    }
+
+    // Helper method - returns the next character without consuming it, or -1 at the end of the
+    //      input
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    // Helper method - consumes and returns the next character, or -1 at the end of the input
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    // Helper method - refills the buffer from the underlying Reader. Returns false if there
+    //      was nothing left to read.
+    private boolean fill() throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        while (count == 0) {
+            count = in.read(buffer, 0, buffer.length);
+        }
+        if (count < 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
     }
 }
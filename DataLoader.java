@@ -1,30 +1,117 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.*;
+import java.util.stream.*;
+import java.util.zip.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 
 // This class represents a DataLoader capable of loading both data and labels from
 // A provided CSV file and manages them accordingly
+// The source can also be a directory, whose .csv and .csv.gz files are all loaded, or a glob
+//      in the file name (like "dumps/2024-*.csv.gz"); files ending in .gz are decompressed as
+//      they're read. Files are read in parallel, each by one thread, which hands batches of rows
+//      to a bounded pool of threads to be parsed into TextBlocks. Rows are gathered in the
+//      order of their file names and then their place in each file before being shuffled, so
+//      the same seed always gives the same order however the threads ran.
 public class DataLoader {
+    // Rows handed to a parsing thread at a time
+    private static final int BATCH_SIZE = 512;
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
     private List<TextBlock> data;
     private List<String> labels;
+    private int files;
+    private long elapsedNanos;
 
     // Constructs a new DataLoader storing and shuffling data from the given file, where labels
     //      are taken from the given index, using the given 'contentIndex' to convert a
-    //      particular row into the desired datapoint
+    //      particular row into the desired datapoint. Rows are read from the file a batch at a
+    //      time, so only their parsed TextBlocks are kept in memory. The file can also be a
+    //      directory or a glob, and is loaded on one thread per core.
     // 'filePath' should be non-null.
     // Throws a FileNotFoundException
     //      If the provided file doesn't exist
+    // Throws an UncheckedIOException
+    //      If a file can't be read or decompressed
     public DataLoader(String filePath, int labelIndex, int contentIndex)
                       throws FileNotFoundException {
+        this(filePath, labelIndex, contentIndex, RAND.nextInt(Integer.MAX_VALUE),
+             Runtime.getRuntime().availableProcessors());
+    }
+
+    // Constructs a new DataLoader storing the rows of every file of the given source (a file, a
+    //      directory or a glob) shuffled by the given seed, parsing them on the given number of
+    //      threads. Labels are taken from 'labelIndex' and texts from 'contentIndex' as above.
+    //      The first row of every file is skipped since it's just titles.
+    // Throws an IllegalArgumentException
+    //      If the source is null or threads is less than 1
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist, or no file matches the directory or glob
+    // Throws an UncheckedIOException
+    //      If a file can't be read or decompressed
+    public DataLoader(String source, int labelIndex, int contentIndex, long seed, int threads)
+                      throws FileNotFoundException {
+        if (source == null || threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        long start = System.nanoTime();
+        List<Path> paths = DataLoader.resolve(source);
         this.data = new ArrayList<>();
         this.labels = new ArrayList<>();
-        
-        List<List<String>> rows = CsvReader.read(filePath);
-        for (List<String> row : rows) {
-            this.data.add(new TextBlock(row.get(contentIndex)));
-            this.labels.add(row.get(labelIndex));
+        this.files = paths.size();
+
+        ExecutorService readers = Executors.newFixedThreadPool(Math.min(threads, paths.size()),
+                                                               daemon("data-loader-reader"));
+        // Readers parse their batches themselves whenever the parsers are all busy and their
+        //      queue is full, so at most a few batches of raw rows wait at any time
+        ThreadPoolExecutor parsers = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(2 * threads), daemon("data-loader-parser"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            List<Future<List<Batch>>> parts = new ArrayList<>();
+            for (Path path : paths) {
+                parts.add(readers.submit(() -> read(path, labelIndex, contentIndex, parsers)));
+            }
+            for (Future<List<Batch>> part : parts) {
+                for (Batch batch : part.get()) {
+                    this.data.addAll(batch.blocks.get());
+                    this.labels.addAll(batch.labels);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while loading");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            readers.shutdownNow();
+            parsers.shutdownNow();
         }
-        DataLoader.shuffle(this);
+        DataLoader.shuffle(this.data, this.labels, seed);
+        this.elapsedNanos = System.nanoTime() - start;
+    }
+
+    // Loads the given source and prints how many rows it held and how fast they were loaded.
+    // Arguments: [source] [seed] [threads], defaulting to Client.TRAIN_FILE, seed 0 and one
+    //      thread per core.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist, or no file matches the directory or glob
+    public static void main(String[] args) throws FileNotFoundException {
+        String source = args.length > 0 ? args[0] : Client.TRAIN_FILE;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                                      : Runtime.getRuntime().availableProcessors();
+        DataLoader loader = new DataLoader(source, Client.LABEL_INDEX, Client.CONTENT_INDEX,
+                                           seed, threads);
+        System.out.printf("Loaded %d rows from %d files in %.1f ms (%.0f rows/s)%n",
+                          loader.data.size(), loader.files, loader.elapsedNanos / 1e6,
+                          loader.getRowsPerSecond());
     }
 
     // Returns the List of TextBlock data points currently stored by this DataLoader
@@ -37,6 +124,21 @@ public class DataLoader {
         return this.labels;
     }
 
+    // Returns the number of files the data of this DataLoader was loaded from
+    public int getFileCount() {
+        return this.files;
+    }
+
+    // Returns the number of nanoseconds loading took, from finding the files to shuffling
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    // Returns the number of rows loaded per second
+    public double getRowsPerSecond() {
+        return this.data.size() / (Math.max(this.elapsedNanos, 1) / 1e9);
+    }
+
     public static final Random RAND = new Random();
 
     // Shuffles the data and labels stored by the provided DataLoader equally so each label
@@ -50,8 +152,129 @@ public class DataLoader {
     //      to the original datapoint at the same index
     // 'data' and 'labels' should be non-null.
     public static void shuffle(List<TextBlock> data, List<String> labels) {
-        int seed = RAND.nextInt(Integer.MAX_VALUE);
+        DataLoader.shuffle(data, labels, RAND.nextInt(Integer.MAX_VALUE));
+    }
+
+    // Shuffles the provided data and label lists equally, in an order that only depends on the
+    //      given seed and the size of the lists
+    // 'data' and 'labels' should be non-null.
+    public static void shuffle(List<TextBlock> data, List<String> labels, long seed) {
         Collections.shuffle(data, new Random(seed));
         Collections.shuffle(labels, new Random(seed));
     }
+
+    // Helper method - returns the files of the given source sorted by name: the file itself, the
+    //      .csv and .csv.gz files of a directory, or the files matching a glob in the file name.
+    //      A file that exists is loaded as it is, even if its name holds glob characters.
+    // Throws a FileNotFoundException
+    //      If the file doesn't exist, or nothing matches the directory or glob
+    private static List<Path> resolve(String source) throws FileNotFoundException {
+        Path path = Paths.get(source);
+        Path directory;
+        PathMatcher matcher;
+        if (Files.isRegularFile(path)) {
+            return List.of(path);
+        } else if (Files.isDirectory(path)) {
+            directory = path;
+            matcher = FileSystems.getDefault().getPathMatcher("glob:*.{csv,csv.gz}");
+        } else if (path.getFileName() != null
+                   && path.getFileName().toString().matches(".*[*?\\[{].*")) {
+            directory = path.getParent() == null ? Paths.get(".") : path.getParent();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+        } else {
+            throw new FileNotFoundException(source + " (No such file or directory)");
+        }
+
+        List<Path> matches = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry) && matcher.matches(entry.getFileName())) {
+                    matches.add(entry);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(source + " (No such file or directory)");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (matches.isEmpty()) {
+            throw new FileNotFoundException(source + " (No matching files)");
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    // Helper method - reads the rows of the given file in batches, handing each batch to the
+    //      parsers, and returns the batches in file order
+    // Throws an UncheckedIOException
+    //      If the file can't be read or decompressed
+    private static List<Batch> read(Path path, int labelIndex, int contentIndex,
+                                    ExecutorService parsers) {
+        List<Batch> batches = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new InputStreamReader(open(path),
+                                                                    StandardCharsets.UTF_8))) {
+            if (reader.hasNext()) {
+                reader.next();      // Skip the first row since it's just titles
+            }
+            while (reader.hasNext()) {
+                List<String> texts = new ArrayList<>(BATCH_SIZE);
+                List<String> batchLabels = new ArrayList<>(BATCH_SIZE);
+                while (texts.size() < BATCH_SIZE && reader.hasNext()) {
+                    List<String> row = reader.next();
+                    texts.add(row.get(contentIndex));
+                    batchLabels.add(row.get(labelIndex));
+                }
+                Future<List<TextBlock>> blocks = parsers.submit(() -> {
+                    List<TextBlock> parsed = new ArrayList<>(texts.size());
+                    for (String text : texts) {
+                        parsed.add(new TextBlock(text));
+                    }
+                    return parsed;
+                });
+                batches.add(new Batch(blocks, batchLabels));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read " + path, e);
+        } catch (UncheckedIOException e) {
+            throw new UncheckedIOException("Can't read " + path, e.getCause());
+        }
+        return batches;
+    }
+
+    // Helper method - opens the given file, decompressing it if its name ends in .gz
+    // Throws an IOException
+    //      If the file can't be opened or isn't in the gzip format
+    private static InputStream open(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (!path.getFileName().toString().endsWith(".gz")) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Helper method - returns a factory of daemon threads with the given name
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // This class is a batch of rows of a file: the future TextBlocks of their texts, and their
+    //      labels
+    private static class Batch {
+        private final Future<List<TextBlock>> blocks;
+        private final List<String> labels;
+
+        private Batch(Future<List<TextBlock>> blocks, List<String> labels) {
+            this.blocks = blocks;
+            this.labels = labels;
+        }
+    }
 }
@@ -0,0 +1,380 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+import java.io.*;
+import java.nio.charset.*;
+
+// This class represents a bagged ensemble of Classifiers that classifies by majority vote. Since
+//      the tree a Classifier grows depends on the order its data comes in, each member is trained
+//      on its own seeded shuffle (or bootstrap sample) of the same parsed TextBlocks, and the
+//      members are trained in parallel, one per core.
+// Members are frozen once trained, and classifying walks the compiled tree of every member over
+//      the same TextBlock, so a text is only parsed once however many members there are. Raw text
+//      is scanned once for the features of all members, without adding its words to the
+//      Vocabulary. Ties go to the tied label that the earliest member voted for.
+// An ensemble is saved as a text file holding an "Ensemble: N" line followed by each member in
+//      the text format of Classifier.save().
+public class Ensemble {
+    public static final String HEADER = "Ensemble: ";
+
+    private final Classifier[] members;
+    private final CompiledTree[] trees;
+    // Every label of any member, and for each member the index here of each of its labels
+    private final String[] labels;
+    private final int[][] labelIndex;
+    // Vocabulary IDs of every feature of any member, sorted, and for each member the index here
+    //      of each of its features (-1 for a null feature)
+    private final int[] featureIds;
+    private final int[][] featureIndex;
+
+    // Constructs a new Ensemble of the given number of members, trained in parallel on the given
+    //      datapoints and their labels. Each member is trained on its own arrangement of the data,
+    //      drawn from the given seed: a bootstrap sample (as many datapoints as there are, drawn
+    //      with replacement) if 'bootstrap' is true, or a shuffle of all of them otherwise. The
+    //      same seed always gives the same members.
+    // Throws an IllegalArgumentException
+    //      If either list is null, empty or contains null, the lists have differing sizes, or
+    //      members is less than 1
+    public Ensemble(List<TextBlock> data, List<String> labels, int members, long seed,
+                    boolean bootstrap) {
+        if (data == null || labels == null || data.contains(null) || labels.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        if (data.size() != labels.size() || data.isEmpty() || members < 1) {
+            throw new IllegalArgumentException();
+        }
+        Random random = new Random(seed);
+        long[] seeds = new long[members];
+        for (int m = 0; m < members; m++) {
+            seeds[m] = random.nextLong();
+        }
+        int threads = Math.min(members, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "ensemble-training");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Classifier>> futures = new ArrayList<>();
+            for (int m = 0; m < members; m++) {
+                long memberSeed = seeds[m];
+                futures.add(pool.submit(() -> train(data, labels, memberSeed, bootstrap)));
+            }
+            this.members = new Classifier[members];
+            for (int m = 0; m < members; m++) {
+                this.members[m] = futures.get(m).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while training");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        this.trees = compiledTrees(this.members);
+        this.labels = collectLabels();
+        this.labelIndex = indexLabels();
+        this.featureIds = collectFeatures();
+        this.featureIndex = indexFeatures();
+    }
+
+    // Constructs a new Ensemble from a file written by save()
+    // Throws an IllegalArgumentException
+    //      If the input is null or doesn't start with an ensemble header
+    public Ensemble(Scanner input) {
+        if (input == null || !input.hasNextLine()) {
+            throw new IllegalArgumentException();
+        }
+        String header = input.nextLine();
+        if (!header.startsWith(HEADER)) {
+            throw new IllegalArgumentException("Not an ensemble: " + header);
+        }
+        int count;
+        try {
+            count = Integer.parseInt(header.substring(HEADER.length()).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an ensemble: " + header);
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("Not an ensemble: " + header);
+        }
+        this.members = new Classifier[count];
+        for (int m = 0; m < count; m++) {
+            members[m] = new Classifier(input);
+        }
+        this.trees = compiledTrees(members);
+        this.labels = collectLabels();
+        this.labelIndex = indexLabels();
+        this.featureIds = collectFeatures();
+        this.featureIndex = indexFeatures();
+    }
+
+    // Trains an Ensemble on Client.TRAIN_FILE and prints its accuracy on Client.TEST_FILE next to
+    //      that of its first member alone, then saves it to the given file if there is one.
+    // Arguments: [members] [seed] [bootstrap] [output file], defaulting to 8 members, seed 0 and
+    //      shuffles.
+    // Throws an IOException
+    //      If a file can't be read or written
+    public static void main(String[] args) throws IOException {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        boolean bootstrap = args.length > 2 && Boolean.parseBoolean(args[2]);
+        List<TextBlock> data = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        try (Stream<List<String>> rows = CsvReader.stream(Client.TRAIN_FILE)) {
+            rows.forEach(row -> {
+                data.add(new TextBlock(row.get(Client.CONTENT_INDEX)));
+                labels.add(row.get(Client.LABEL_INDEX));
+            });
+        }
+        DataLoader test = new DataLoader(Client.TEST_FILE, Client.LABEL_INDEX,
+                                         Client.CONTENT_INDEX);
+
+        long start = System.nanoTime();
+        Ensemble ensemble = new Ensemble(data, labels, members, seed, bootstrap);
+        System.out.printf("Trained %d members in %.1f ms%n", members,
+                          (System.nanoTime() - start) / 1e6);
+        System.out.println("First member: " + ensemble.getMember(0).calculateAccuracy(
+                test.getData(), test.getLabels()));
+        System.out.println("Ensemble:     " + ensemble.calculateAccuracy(test.getData(),
+                                                                         test.getLabels()));
+        if (args.length > 3) {
+            try (PrintStream out = new PrintStream(args[3], StandardCharsets.UTF_8)) {
+                ensemble.save(out);
+            }
+        }
+    }
+
+    // Returns the number of members of this Ensemble
+    public int size() {
+        return members.length;
+    }
+
+    // Returns the given member of this Ensemble
+    // Throws an IndexOutOfBoundsException
+    //      If there is no such member
+    public Classifier getMember(int index) {
+        return members[index];
+    }
+
+    // Returns the label most members predict for the given input, or "" if every member has an
+    //      empty tree
+    // Throws an IllegalArgumentException
+    //      If the input is null
+    public String classify(TextBlock input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] voted = new int[trees.length];
+        for (int m = 0; m < trees.length; m++) {
+            CompiledTree tree = trees[m];
+            voted[m] = tree.size() == 0 ? -1 : labelIndex[m][tree.labelOf(input)];
+        }
+        return winner(voted);
+    }
+
+    // Returns the label most members predict for the given raw text. The text is scanned once,
+    //      counting only the words that are features of some member, and every member walks its
+    //      tree over those counts, so the words of the text are never added to the Vocabulary.
+    // Throws an IllegalArgumentException
+    //      If the text is null
+    public String classify(CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] union = new int[featureIds.length];
+        int total = 0;
+        Tokenizer tokens = new Tokenizer(text);
+        while (tokens.next()) {
+            total++;
+            int id = tokens.id();
+            if (id >= 0) {
+                int f = Arrays.binarySearch(featureIds, id);
+                if (f >= 0) {
+                    union[f]++;
+                }
+            }
+        }
+        int[] voted = new int[trees.length];
+        for (int m = 0; m < trees.length; m++) {
+            CompiledTree tree = trees[m];
+            if (tree.size() == 0) {
+                voted[m] = -1;
+            } else {
+                int[] own = featureIndex[m];
+                int[] counts = new int[own.length];
+                for (int f = 0; f < own.length; f++) {
+                    counts[f] = own[f] < 0 ? 0 : union[own[f]];
+                }
+                voted[m] = labelIndex[m][tree.labelOf(counts, total)];
+            }
+        }
+        return winner(voted);
+    }
+
+    // Helper method - returns the label with the most votes, given the index in 'labels' of the
+    //      label each member voted for (-1 for no vote), or "" if no member voted. Ties go to the
+    //      tied label that the earliest member voted for.
+    private String winner(int[] voted) {
+        int[] votes = new int[labels.length];
+        for (int label : voted) {
+            if (label >= 0) {
+                votes[label]++;
+            }
+        }
+        int best = -1;
+        for (int label : voted) {
+            if (label >= 0 && (best < 0 || votes[label] > votes[best])) {
+                best = label;
+            }
+        }
+        return best < 0 ? "" : labels[best];
+    }
+
+    // Returns the label predicted for every input in the given list, at the same index. Inputs
+    //      are classified in parallel on the common fork-join pool.
+    // Throws an IllegalArgumentException
+    //      If the list is null or contains null
+    public List<String> classifyAll(List<TextBlock> inputs) {
+        if (inputs == null || inputs.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        String[] results = new String[inputs.size()];
+        IntStream.range(0, results.length).parallel()
+                 .forEach(i -> results[i] = classify(inputs.get(i)));
+        return Arrays.asList(results);
+    }
+
+    // Returns the accuracy of this Ensemble on the given data and labels, the same way as
+    //      Classifier.calculateAccuracy: for each label classified correctly at least once, plus
+    //      "Overall". Datapoints are classified in parallel.
+    // Throws an IllegalArgumentException
+    //      If either list is null or contains null, or the lists have differing sizes
+    public Map<String, Double> calculateAccuracy(List<TextBlock> data, List<String> labels) {
+        if (data == null || labels == null || data.contains(null) || labels.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        if (data.size() != labels.size()) {
+            throw new IllegalArgumentException(
+                    String.format("Length of provided data [%d] doesn't match provided labels [%d]",
+                                  data.size(), labels.size()));
+        }
+        List<String> results = classifyAll(data);
+        Map<String, Integer> labelToTotal = new HashMap<>();
+        Map<String, Double> labelToCorrect = new HashMap<>();
+        labelToTotal.put("Overall", 0);
+        labelToCorrect.put("Overall", 0.0);
+        for (int i = 0; i < results.size(); i++) {
+            String result = results.get(i);
+            String label = labels.get(i);
+            labelToTotal.merge(label, 1, Integer::sum);
+            labelToTotal.merge("Overall", 1, Integer::sum);
+            if (result.equals(label)) {
+                labelToCorrect.merge(result, 1.0, Double::sum);
+                labelToCorrect.merge("Overall", 1.0, Double::sum);
+            }
+        }
+        for (String label : labelToCorrect.keySet()) {
+            labelToCorrect.put(label, labelToCorrect.get(label) / labelToTotal.get(label));
+        }
+        return labelToCorrect;
+    }
+
+    // Writes this Ensemble to the given PrintStream in the format read by Ensemble(Scanner)
+    // Throws an IllegalArgumentException
+    //      If the output is null
+    public void save(PrintStream output) {
+        if (output == null) {
+            throw new IllegalArgumentException();
+        }
+        output.print(HEADER + members.length + System.lineSeparator());
+        for (int m = 0; m < members.length; m++) {
+            trees[m].saveText(output);
+        }
+    }
+
+    // Helper method - trains and freezes a single member on the arrangement of the data drawn
+    //      from the given seed
+    private static Classifier train(List<TextBlock> data, List<String> labels, long seed,
+                                    boolean bootstrap) {
+        Random random = new Random(seed);
+        int size = data.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = bootstrap ? random.nextInt(size) : i;
+        }
+        if (!bootstrap) {
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+        }
+        List<TextBlock> memberData = new ArrayList<>(size);
+        List<String> memberLabels = new ArrayList<>(size);
+        for (int i : order) {
+            memberData.add(data.get(i));
+            memberLabels.add(labels.get(i));
+        }
+        Classifier member = new Classifier(memberData, memberLabels);
+        member.freeze();
+        return member;
+    }
+
+    // Helper method - returns the compiled tree of every given member, which never changes
+    //      since members are frozen
+    private static CompiledTree[] compiledTrees(Classifier[] members) {
+        CompiledTree[] trees = new CompiledTree[members.length];
+        for (int m = 0; m < members.length; m++) {
+            trees[m] = members[m].getCompiledTree();
+        }
+        return trees;
+    }
+
+    // Helper method - returns every distinct label of the members, sorted
+    private String[] collectLabels() {
+        Set<String> all = new TreeSet<>();
+        for (int m = 0; m < members.length; m++) {
+            all.addAll(trees[m].getLabels());
+        }
+        return all.toArray(new String[0]);
+    }
+
+    // Helper method - returns, for each member, the index in 'labels' of each of its labels
+    private int[][] indexLabels() {
+        int[][] index = new int[members.length][];
+        for (int m = 0; m < members.length; m++) {
+            List<String> own = trees[m].getLabels();
+            index[m] = new int[own.size()];
+            for (int l = 0; l < own.size(); l++) {
+                index[m][l] = Arrays.binarySearch(labels, own.get(l));
+            }
+        }
+        return index;
+    }
+
+    // Helper method - returns the Vocabulary ID of every distinct feature of the members, sorted
+    private int[] collectFeatures() {
+        return Arrays.stream(trees).flatMapToInt(tree -> Arrays.stream(tree.getFeatureIds()))
+                     .filter(id -> id >= 0).sorted().distinct().toArray();
+    }
+
+    // Helper method - returns, for each member, the index in 'featureIds' of each of its features,
+    //      or -1 for a null feature
+    private int[][] indexFeatures() {
+        int[][] index = new int[members.length][];
+        for (int m = 0; m < members.length; m++) {
+            int[] own = trees[m].getFeatureIds();
+            index[m] = new int[own.length];
+            for (int f = 0; f < own.length; f++) {
+                index[m][f] = own[f] < 0 ? -1 : Arrays.binarySearch(featureIds, own[f]);
+            }
+        }
+        return index;
+    }
+}
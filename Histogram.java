@@ -0,0 +1,110 @@
+import java.util.concurrent.atomic.*;
+
+// This class represents a histogram of non-negative long values, such as latencies in
+//      nanoseconds, that many threads can record into at once. Like an HDR histogram, it splits
+//      every power-of-two range of values into SUB_BUCKETS equally wide buckets, so percentiles
+//      are accurate to within 1/SUB_BUCKETS of the value no matter how large it is, while only
+//      a fixed number of buckets is ever needed. Each bucket is a striped LongAdder, so threads
+//      recording at the same time rarely contend.
+public class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    // Constructs a new empty Histogram with the given name
+    public Histogram(String name) {
+        this.name = name;
+        this.buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    // Returns the name of this Histogram
+    public String getName() {
+        return name;
+    }
+
+    // Records one occurrence of the given value. Negative values are recorded as 0.
+    public void record(long value) {
+        value = Math.max(value, 0);
+        buckets[indexOf(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    // Returns the number of values recorded so far
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    // Returns the mean of the values recorded so far, or 0 if there are none
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    // Returns the largest value recorded so far, or 0 if there are none
+    public long max() {
+        return max.get();
+    }
+
+    // Returns the sum of the values recorded so far
+    public long sum() {
+        return sum.sum();
+    }
+
+    // Returns an upper bound for the given percentile (0 to 100) of the values recorded so far,
+    //      accurate to within 1/SUB_BUCKETS of the true value, or 0 if there are none
+    public long percentile(double percent) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // Helper method - returns the bucket the given non-negative value is counted in. Values
+    //      below SUB_BUCKETS get a bucket each; above that, each power of two gets SUB_BUCKETS.
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return SUB_BUCKETS * (shift + 1) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // Helper method - returns the largest value counted in the given bucket
+    private static long highestOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+import java.io.*;
+import java.net.*;
+import java.net.http.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+// Replays messages against a running ClassificationServer and reports its latency and throughput.
+//      A fixed number of client threads each send one request at a time, starting the next as
+//      soon as the previous one has been answered, until every message has been sent the given
+//      number of times.
+public class LoadGenerator {
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    // Arguments: [messages file] [concurrency] [rounds] [server URL]. Files ending in .csv are
+    //      read like Client.TEST_FILE and their content column is sent; from any other file,
+    //      every non-blank line is sent as one message. Defaults to Client.TEST_FILE with
+    //      DEFAULT_CONCURRENCY threads, 1 round, against a local server on the default port.
+    // Throws an IOException
+    //      If the messages file can't be read
+    // Throws an InterruptedException
+    //      If interrupted while waiting for the client threads
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String fileName = args.length > 0 ? args[0] : Client.TEST_FILE;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONCURRENCY;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        URI uri = URI.create(args.length > 3 ? args[3] : "http://localhost:" +
+                             ClassificationServer.DEFAULT_PORT + ClassificationServer.PATH);
+
+        List<String> messages = readMessages(fileName);
+        System.out.println("Sending " + messages.size() * rounds + " requests from " +
+                           concurrency + " threads to " + uri);
+        System.out.println(run(uri, messages, concurrency, rounds));
+    }
+
+    // Sends every message 'rounds' times to the server at the given URI from 'concurrency'
+    //      threads, and returns a summary of the latencies the client observed
+    // Throws an IllegalArgumentException
+    //      If there are no messages, or concurrency or rounds is less than 1
+    // Throws an InterruptedException
+    //      If interrupted while waiting for the client threads
+    public static String run(URI uri, List<String> messages, int concurrency, int rounds)
+            throws InterruptedException {
+        if (messages.isEmpty() || concurrency < 1 || rounds < 1) {
+            throw new IllegalArgumentException();
+        }
+        HttpClient client = HttpClient.newBuilder()
+                                      .version(HttpClient.Version.HTTP_1_1)
+                                      .build();
+        int total = messages.size() * rounds;
+        long[] latencies = new long[total];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        ExecutorService threads = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            threads.execute(() -> {
+                for (int i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    messages.get(i % messages.size()), StandardCharsets.UTF_8))
+                            .build();
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response =
+                                client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) {
+                            failures.getAndIncrement();
+                        }
+                    } catch (IOException e) {
+                        failures.getAndIncrement();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    latencies[i] = System.nanoTime() - sent;
+                }
+            });
+        }
+        threads.shutdown();
+        threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return String.format("requests: %d (%d failed)%n" +
+                             "throughput: %.0f requests/s%n" +
+                             "latency p50: %.3f ms, p99: %.3f ms, max: %.3f ms",
+                             total, failures.get(), total / (elapsed / 1e9),
+                             percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6,
+                             latencies[total - 1] / 1e6);
+    }
+
+    // Helper method - returns the messages to send from the given file
+    private static List<String> readMessages(String fileName) throws IOException {
+        if (fileName.endsWith(".csv")) {
+            try (Stream<List<String>> rows = CsvReader.stream(fileName)) {
+                return rows.map(row -> row.get(Client.CONTENT_INDEX))
+                           .collect(Collectors.toList());
+            }
+        }
+        return Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.isBlank())
+                    .collect(Collectors.toList());
+    }
+
+    // Helper method - returns the given percentile (0 to 100) of the given sorted latencies,
+    //      using the nearest-rank method
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.*;
+
+// This class holds the optional instrumentation of classifying, parsing and loading models.
+//      It is off unless the JVM is started with -Dclassifier.metrics=true. ENABLED is a static
+//      final constant, so when it is false the JIT drops every instrumented block entirely and
+//      the hot paths run exactly as they would without any instrumentation.
+// Latencies are recorded in nanoseconds into these histograms:
+//      parse_nanos     building a TextBlock from raw text
+//      tokenize_nanos  the single scan over raw text when classifying text directly
+//      traverse_nanos  walking the compiled decision tree
+//      classify_nanos  a whole Classifier.classify call, parsing included for raw text
+//      load_nanos      loading a model from a text or binary file
+//      path_depth      the number of decision nodes on the path each classification takes
+// How often each node of a model is visited is counted by the model itself; see
+//      Classifier.featureHits().
+public class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("classifier.metrics");
+
+    public static final Histogram PARSE = new Histogram("parse_nanos");
+    public static final Histogram TOKENIZE = new Histogram("tokenize_nanos");
+    public static final Histogram TRAVERSE = new Histogram("traverse_nanos");
+    public static final Histogram CLASSIFY = new Histogram("classify_nanos");
+    public static final Histogram LOAD = new Histogram("load_nanos");
+    public static final Histogram DEPTH = new Histogram("path_depth");
+
+    private static final List<Histogram> HISTOGRAMS = List.of(PARSE, TOKENIZE, TRAVERSE,
+                                                              CLASSIFY, LOAD, DEPTH);
+    // Percentiles exported for every histogram, with their names in JSON and in Prometheus
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] JSON_NAMES = {"p50", "p90", "p99", "p999"};
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+    private static final String PREFIX = "classifier_";
+
+    // Returns a snapshot of every histogram, plus the given number of visits to the nodes of
+    //      each feature word, as a JSON object:
+    //          {"enabled":true,
+    //           "histograms":{"parse_nanos":{"count":..,"mean":..,"max":..,"p50":..,..},..},
+    //           "featureHits":{"money":..,..}}
+    // 'featureHits' should be non-null.
+    public static String toJson(Map<String, Long> featureHits) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"enabled\":").append(ENABLED).append(",\"histograms\":{");
+        for (int h = 0; h < HISTOGRAMS.size(); h++) {
+            Histogram histogram = HISTOGRAMS.get(h);
+            if (h > 0) {
+                json.append(',');
+            }
+            json.append(quote(histogram.getName()))
+                .append(":{\"count\":").append(histogram.count())
+                .append(",\"mean\":").append(histogram.mean())
+                .append(",\"max\":").append(histogram.max());
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                json.append(",\"").append(JSON_NAMES[p]).append("\":")
+                    .append(histogram.percentile(PERCENTILES[p]));
+            }
+            json.append('}');
+        }
+        json.append("},\"featureHits\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : featureHits.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(quote(entry.getKey())).append(':').append(entry.getValue());
+        }
+        return json.append("}}").toString();
+    }
+
+    // Returns a snapshot of every histogram, plus the given number of visits to the nodes of
+    //      each feature word, in the Prometheus text exposition format. Histograms are exported
+    //      as summaries with quantiles, node visits as a counter labelled by feature.
+    // 'featureHits' should be non-null.
+    public static String toPrometheus(Map<String, Long> featureHits) {
+        StringBuilder text = new StringBuilder();
+        for (Histogram histogram : HISTOGRAMS) {
+            String name = PREFIX + histogram.getName();
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                text.append(name).append("{quantile=\"").append(QUANTILES[p]).append("\"} ")
+                    .append(histogram.percentile(PERCENTILES[p])).append('\n');
+            }
+            text.append(name).append("_sum ").append(histogram.sum()).append('\n');
+            text.append(name).append("_count ").append(histogram.count()).append('\n');
+        }
+        String hits = PREFIX + "feature_hits_total";
+        text.append("# TYPE ").append(hits).append(" counter\n");
+        for (Map.Entry<String, Long> entry : featureHits.entrySet()) {
+            text.append(hits).append("{feature=\"").append(escapeLabel(entry.getKey()))
+                .append("\"} ").append(entry.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    // Returns the given String as a JSON string literal, or null if it is null
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    // Helper method - returns the given value escaped for a Prometheus label value
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// This class represents a queue in front of a Classifier that groups texts submitted by many
+//      threads at once into small batches. Worker threads take a whole batch off the queue at a
+//      time and classify it in one go with Classifier.classifyTexts, against a single version
+//      of the model, so concurrent callers share the hand-off cost instead of each paying it.
+// A worker only waits for a batch to fill up while another worker is busy classifying, that is
+//      while requests are coming in faster than one thread keeps up with. An idle server
+//      classifies each request as soon as it arrives.
+public class MicroBatcher implements AutoCloseable {
+    private final Classifier classifier;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Request> queue;
+    private final List<Thread> workers;
+    // Number of workers classifying a batch right now
+    private final AtomicInteger busy;
+    private volatile boolean closed;
+
+    // Constructs a new MicroBatcher classifying with the given Classifier on the given number of
+    //      worker threads. Batches hold at most 'maxBatch' texts, and while another worker is
+    //      busy, a worker waits at most 'maxDelayMicros' microseconds after the first text of a
+    //      batch for more to arrive.
+    // Throws an IllegalArgumentException
+    //      If the classifier is null, or any of the numbers is out of range
+    public MicroBatcher(Classifier classifier, int workers, int maxBatch, long maxDelayMicros) {
+        if (classifier == null || workers < 1 || maxBatch < 1 || maxDelayMicros < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.classifier = classifier;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.queue = new LinkedBlockingQueue<>();
+        this.busy = new AtomicInteger();
+        this.workers = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, "micro-batcher-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            this.workers.add(worker);
+        }
+    }
+
+    // Queues the given text to be classified and returns a future that completes with its label
+    // Throws an IllegalArgumentException
+    //      If the text is null
+    // Throws an IllegalStateException
+    //      If this MicroBatcher has been closed
+    public CompletableFuture<String> submit(CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException();
+        }
+        if (closed) {
+            throw new IllegalStateException("The batcher has been closed");
+        }
+        Request request = new Request(text);
+        queue.add(request);
+        // close() may have drained the queue between the check above and the add
+        if (closed) {
+            queue.remove(request);
+            request.result.cancel(false);
+            throw new IllegalStateException("The batcher has been closed");
+        }
+        return request.result;
+    }
+
+    // Stops the worker threads. Texts still waiting in the queue are failed with a
+    //      CancellationException.
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        List<Request> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Request request : left) {
+            request.result.cancel(false);
+        }
+    }
+
+    // Helper method - the loop each worker thread runs: take a batch off the queue and classify it
+    private void work() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || busy.get() == 0) {
+                        break;
+                    }
+                    Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                for (Request request : batch) {
+                    request.result.cancel(false);
+                }
+                return;
+            }
+            busy.incrementAndGet();
+            try {
+                classify(batch);
+            } finally {
+                busy.decrementAndGet();
+            }
+            batch.clear();
+        }
+    }
+
+    // Helper method - classifies a batch in one call and completes the future of every request
+    //      in it. If the batch fails as a whole, each text is classified on its own, so a single
+    //      bad request doesn't fail the others.
+    private void classify(List<Request> batch) {
+        List<CharSequence> texts = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            texts.add(request.text);
+        }
+        String[] labels;
+        try {
+            labels = classifier.classifyTexts(texts);
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                try {
+                    request.result.complete(classifier.classify(request.text));
+                } catch (RuntimeException failure) {
+                    request.result.completeExceptionally(failure);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < labels.length; i++) {
+            batch.get(i).result.complete(labels[i]);
+        }
+    }
+
+    // This class pairs a queued text with the future its label is delivered through
+    private static class Request {
+        private final CharSequence text;
+        private final CompletableFuture<String> result;
+
+        private Request(CharSequence text) {
+            this.text = text;
+            this.result = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+import java.io.*;
+import java.nio.charset.*;
+
+// This class holds the model that is currently being served and lets it be replaced while other
+//      threads keep classifying with it. Every model is a frozen, and so immutable, Classifier
+//      wrapped in a Version that records where it came from. The current Version sits behind an
+//      AtomicReference: classifying only reads that reference, so it never waits for a model
+//      to be loaded or swapped, and each call uses one model from start to finish.
+// Models loaded from files are read on a background thread and only swapped in once they are
+//      complete. The last few Versions are kept so a bad model can be rolled back.
+// Optionally, results of classifying raw text are cached by a ClassificationCache, which keys
+//      them by the model that computed them, so results of a model no longer served are never
+//      used.
+public class ModelRegistry implements AutoCloseable {
+    // Number of Versions kept, counting the current one
+    public static final int HISTORY = 8;
+
+    private final AtomicReference<Version> current;
+    private final AtomicInteger versions;
+    private final ExecutorService loader;
+    private final ClassificationCache cache;
+
+    // Constructs a new ModelRegistry serving the given model, described by the given source,
+    //      without caching results
+    // Throws an IllegalArgumentException
+    //      If the model is null or not frozen
+    public ModelRegistry(Classifier model, String source) {
+        this(model, source, 0);
+    }
+
+    // Constructs a new ModelRegistry serving the given model, described by the given source.
+    //      Results of classifying raw text are cached, up to the given number of them; 0 turns
+    //      caching off.
+    // Throws an IllegalArgumentException
+    //      If the model is null or not frozen, or cacheEntries is negative
+    public ModelRegistry(Classifier model, String source, int cacheEntries) {
+        checkFrozen(model);
+        if (cacheEntries < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.cache = cacheEntries > 0 ? new ClassificationCache(cacheEntries) : null;
+        this.versions = new AtomicInteger();
+        this.current = new AtomicReference<>(new Version(versions.incrementAndGet(), source, 0,
+                                                         model, null));
+        this.loader = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "model-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Returns the Version currently being served
+    public Version current() {
+        return current.get();
+    }
+
+    // Returns the label the current model predicts for the given TextBlock
+    public String classify(TextBlock input) {
+        return current.get().getModel().classify(input);
+    }
+
+    // Returns the label the current model predicts for the given raw text
+    public String classify(CharSequence text) {
+        Classifier model = current.get().getModel();
+        if (cache != null) {
+            return cache.classify(model, text);
+        }
+        return model.classify(text);
+    }
+
+    // Returns the cache of classification results, or null if results aren't cached
+    public ClassificationCache getCache() {
+        return cache;
+    }
+
+    // Starts loading the model in the given file on a background thread and returns a future
+    //      that completes with its Version once it is being served. Files ending in
+    //      Client.BINARY_EXTENSION are loaded as binary models, other files as text models.
+    //      If loading fails, the future completes exceptionally and the current model stays.
+    public CompletableFuture<Version> reload(String fileName) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(fileName);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, loader);
+    }
+
+    // Loads the model in the given file on the calling thread, serves it and returns its
+    //      Version. Files ending in Client.BINARY_EXTENSION are loaded as binary models, other
+    //      files as text models. The Version's checksum is the CRC32 of the whole file.
+    // Throws an IOException
+    //      If the file can't be read or isn't a valid model
+    public Version load(String fileName) throws IOException {
+        Classifier model;
+        long checksum;
+        if (fileName.endsWith(Client.BINARY_EXTENSION)) {
+            model = Classifier.loadBinary(fileName);
+            checksum = checksum(fileName);
+        } else {
+            CheckedInputStream in = new CheckedInputStream(new FileInputStream(fileName),
+                                                           new CRC32());
+            try (Scanner input = new Scanner(in, StandardCharsets.UTF_8)) {
+                try {
+                    model = new Classifier(input);
+                } catch (NoSuchElementException | NumberFormatException
+                         | StringIndexOutOfBoundsException e) {
+                    throw new IOException("Not a valid model: " + fileName, e);
+                }
+                if (input.hasNext()) {
+                    throw new IOException("Not a valid model: " + fileName);
+                }
+                in.skip(Long.MAX_VALUE);
+                checksum = in.getChecksum().getValue();
+            }
+        }
+        return publish(model, fileName, checksum);
+    }
+
+    // Serves the given model from now on and returns its new Version
+    // Throws an IllegalArgumentException
+    //      If the model is null or not frozen
+    public Version publish(Classifier model, String source, long checksum) {
+        checkFrozen(model);
+        int number = versions.incrementAndGet();
+        Version previous;
+        Version next;
+        do {
+            previous = current.get();
+            next = new Version(number, source, checksum, model, previous);
+        } while (!current.compareAndSet(previous, next));
+        return next;
+    }
+
+    // Goes back to serving the Version that was served before the current one, and returns it
+    // Throws an IllegalStateException
+    //      If there is no earlier Version left
+    public Version rollback() {
+        Version previous;
+        do {
+            previous = current.get();
+            if (previous.previous == null) {
+                throw new IllegalStateException("No earlier model to roll back to");
+            }
+        } while (!current.compareAndSet(previous, previous.previous));
+        return previous.previous;
+    }
+
+    // Stops the background loading thread. Loads that haven't started yet are dropped.
+    public void close() {
+        loader.shutdownNow();
+    }
+
+    // Helper method - throws an IllegalArgumentException unless the model is a frozen Classifier
+    private static void checkFrozen(Classifier model) {
+        if (model == null || !model.isFrozen()) {
+            throw new IllegalArgumentException("Only frozen models can be served");
+        }
+    }
+
+    // Helper method - returns the CRC32 of the contents of the given file
+    private static long checksum(String fileName) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(fileName)) {
+            byte[] buffer = new byte[1 << 16];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, count);
+            }
+        }
+        return crc.getValue();
+    }
+
+    // This class describes one model the registry has served: the frozen model itself, its
+    //      version number, the file (or other source) it came from, and the CRC32 of that file
+    //      (0 when it wasn't loaded from a file). Versions never change once created.
+    public static class Version {
+        private final int number;
+        private final String source;
+        private final long checksum;
+        private final long loadedAt;
+        private final Classifier model;
+        private final Version previous;
+
+        // Constructs a new Version, keeping at most HISTORY - 1 of the given earlier Versions
+        private Version(int number, String source, long checksum, Classifier model,
+                        Version previous) {
+            this.number = number;
+            this.source = source;
+            this.checksum = checksum;
+            this.loadedAt = System.currentTimeMillis();
+            this.model = model;
+            this.previous = trim(previous, HISTORY - 1);
+        }
+
+        // Helper method - returns the given chain of Versions cut down to at most 'keep' of them,
+        //      copying the ones kept only if something had to be cut
+        private static Version trim(Version chain, int keep) {
+            int length = 0;
+            for (Version v = chain; v != null; v = v.previous) {
+                length++;
+            }
+            if (length <= keep) {
+                return chain;
+            }
+            return copy(chain, keep);
+        }
+
+        // Helper method - returns a copy of the first 'keep' Versions of the given chain
+        private static Version copy(Version chain, int keep) {
+            if (chain == null || keep == 0) {
+                return null;
+            }
+            return new Version(chain, copy(chain.previous, keep - 1));
+        }
+
+        // Constructs a copy of the given Version with a different chain of earlier Versions
+        private Version(Version other, Version previous) {
+            this.number = other.number;
+            this.source = other.source;
+            this.checksum = other.checksum;
+            this.loadedAt = other.loadedAt;
+            this.model = other.model;
+            this.previous = previous;
+        }
+
+        // Returns the version number, which grows by one for every model published
+        public int getNumber() {
+            return number;
+        }
+
+        // Returns where the model came from
+        public String getSource() {
+            return source;
+        }
+
+        // Returns the CRC32 of the model file, or 0 if the model wasn't loaded from a file
+        public long getChecksum() {
+            return checksum;
+        }
+
+        // Returns the time the model was published, in milliseconds since the epoch
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+
+        // Returns the frozen model
+        public Classifier getModel() {
+            return model;
+        }
+
+        public String toString() {
+            return "v" + number + " (" + source + ", crc32 " + Long.toHexString(checksum) + ")";
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.*;
+
+// Checks that a ModelRegistry can be reloaded and rolled back while other threads classify with
+//      it, without those threads ever seeing a half-swapped model or waiting for a swap.
+// A few models are trained on differently shuffled copies of the same data, and every label of
+//      model k is tagged " vk", so each label a reader gets says which model produced it. The
+//      label every model gives every test message is worked out beforehand. Reader threads then
+//      classify the test messages, as raw text and as TextBlocks, while a reloading thread keeps
+//      loading the models from their files (text and binary alternately) and rolling back.
+// The run fails, with exit status 1, if any reader gets a label that isn't exactly what a model
+//      that had been published gives that message, or if any call made while a reload or
+//      rollback was in progress took longer than the given bound. The bound only shows that
+//      readers don't wait for reloads if a reload takes longer than it, so the training file
+//      should be large enough for that.
+public class RegistryStressTest {
+    public static final int MODELS = 4;
+    public static final int DEFAULT_SECONDS = 10;
+    public static final int DEFAULT_READERS = 4;
+    public static final long DEFAULT_MAX_MILLIS = 50;
+
+    // Arguments: [training file] [test file] [seconds] [readers] [max millis], defaulting to
+    //      Client.TRAIN_FILE and Client.TEST_FILE, DEFAULT_SECONDS, DEFAULT_READERS and
+    //      DEFAULT_MAX_MILLIS.
+    // Throws an IOException
+    //      If a data file can't be read or a model file can't be written
+    // Throws an InterruptedException
+    //      If interrupted while waiting for the threads
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String trainFile = args.length > 0 ? args[0] : Client.TRAIN_FILE;
+        String testFile = args.length > 1 ? args[1] : Client.TEST_FILE;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+        int readers = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_READERS;
+        long maxMillis = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_MAX_MILLIS;
+
+        List<String> texts;
+        try (Stream<List<String>> rows = CsvReader.stream(testFile)) {
+            texts = rows.map(row -> row.get(Client.CONTENT_INDEX)).collect(Collectors.toList());
+        }
+        List<TextBlock> blocks = texts.stream().map(TextBlock::new).collect(Collectors.toList());
+
+        Path directory = Files.createTempDirectory("registry-stress");
+        String[] files = new String[MODELS];
+        String[][] expected = new String[MODELS][];
+        Classifier first = null;
+        for (int k = 0; k < MODELS; k++) {
+            Classifier model = train(trainFile, k);
+            model.freeze();
+            expected[k] = new String[texts.size()];
+            for (int i = 0; i < texts.size(); i++) {
+                expected[k][i] = model.classify(blocks.get(i));
+            }
+            if (k % 2 == 0) {
+                files[k] = directory.resolve("model-" + k + ".txt").toString();
+                try (PrintStream out = new PrintStream(files[k], StandardCharsets.UTF_8)) {
+                    model.save(out);
+                }
+            } else {
+                files[k] = directory.resolve("model-" + k + Client.BINARY_EXTENSION).toString();
+                model.saveBinary(files[k]);
+            }
+            if (k == 0) {
+                first = model;
+            }
+        }
+
+        Result result = run(new ModelRegistry(first, "model-0"), files, expected, texts, blocks,
+                            seconds, readers, maxMillis);
+        System.out.println(result);
+        for (String file : files) {
+            Files.deleteIfExists(Paths.get(file));
+        }
+        Files.deleteIfExists(directory);
+        if (!result.passed()) {
+            System.exit(1);
+        }
+    }
+
+    // Classifies the given texts and TextBlocks with the registry on 'readers' threads for the
+    //      given number of seconds, while another thread reloads the given model files in turn
+    //      and rolls back after every third reload, and returns what the readers saw. Labels
+    //      are checked against 'expected', the label every model gives every text, where the
+    //      registry starts out serving model 0 and model k was loaded from files[k].
+    // Throws an IllegalArgumentException
+    //      If seconds or readers is less than 1
+    // Throws an InterruptedException
+    //      If interrupted while waiting for the threads
+    public static Result run(ModelRegistry registry, String[] files, String[][] expected,
+                             List<String> texts, List<TextBlock> blocks, int seconds,
+                             int readers, long maxMillis) throws InterruptedException {
+        if (seconds < 1 || readers < 1) {
+            throw new IllegalArgumentException();
+        }
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        // Models that have been (or are about to be) published, and swaps in progress
+        Set<Integer> published = ConcurrentHashMap.newKeySet();
+        published.add(0);
+        AtomicInteger swapping = new AtomicInteger();
+        Result result = new Result(maxMillis);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            int reader = r;
+            threads.add(new Thread(() -> {
+                long calls = 0;
+                long callsDuringSwaps = 0;
+                long slowest = 0;
+                int i = reader;
+                while (System.nanoTime() < end) {
+                    i = (i + 1) % texts.size();
+                    boolean raw = (calls & 1) == 0;
+                    long start = System.nanoTime();
+                    boolean during = swapping.get() > 0;
+                    String label = raw ? registry.classify(texts.get(i))
+                                       : registry.classify(blocks.get(i));
+                    long took = System.nanoTime() - start;
+                    during |= swapping.get() > 0;
+                    calls++;
+                    if (during) {
+                        callsDuringSwaps++;
+                        slowest = Math.max(slowest, took);
+                    }
+                    int model = modelOf(label);
+                    if (model < 0 || model >= expected.length || !published.contains(model)
+                            || !expected[model][i].equals(label)) {
+                        result.wrong("\"" + label + "\" for message " + i
+                                     + (raw ? " (raw text)" : " (TextBlock)"));
+                    }
+                }
+                result.reader(calls, callsDuringSwaps, slowest);
+            }, "stress-reader-" + r));
+        }
+        threads.add(new Thread(() -> {
+            int reloads = 0;
+            int rollbacks = 0;
+            long swapNanos = 0;
+            for (int k = 1; System.nanoTime() < end; k = (k + 1) % files.length) {
+                swapping.incrementAndGet();
+                long start = System.nanoTime();
+                try {
+                    published.add(k);
+                    registry.reload(files[k]).get();
+                    reloads++;
+                    if (reloads % 3 == 0) {
+                        registry.rollback();
+                        rollbacks++;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ExecutionException e) {
+                    result.wrong("reload of " + files[k] + " failed: " + e.getCause());
+                } finally {
+                    swapNanos += System.nanoTime() - start;
+                    swapping.decrementAndGet();
+                }
+            }
+            result.swapper(reloads, rollbacks, swapNanos);
+        }, "stress-reloader"));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        registry.close();
+        return result;
+    }
+
+    // Helper method - trains a model on the given file, shuffled by the given seed, with every
+    //      label tagged with the seed
+    private static Classifier train(String fileName, int seed) throws FileNotFoundException {
+        DataLoader loader = new DataLoader(fileName, Client.LABEL_INDEX, Client.CONTENT_INDEX,
+                                           seed, 1);
+        List<String> labels = new ArrayList<>();
+        for (String label : loader.getLabels()) {
+            labels.add(label + " v" + seed);
+        }
+        return new Classifier(loader.getData(), labels);
+    }
+
+    // Helper method - returns the model a tagged label came from, or -1 if it isn't tagged
+    private static int modelOf(String label) {
+        int tag = label.lastIndexOf(" v");
+        if (tag < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(label.substring(tag + 2));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // This class gathers what the threads of a run saw. Threads add to it once each, except for
+    //      wrong labels, which are counted as they're found.
+    public static class Result {
+        // Number of wrong labels whose details are kept
+        private static final int EXAMPLES = 5;
+
+        private final long maxNanos;
+        private long calls;
+        private long callsDuringSwaps;
+        private long slowestDuringSwaps;
+        private int reloads;
+        private int rollbacks;
+        private long swapNanos;
+        private long wrong;
+        private final List<String> examples = new ArrayList<>();
+
+        private Result(long maxMillis) {
+            this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        }
+
+        // Returns true if every label was right and no call made during a swap was too slow
+        public synchronized boolean passed() {
+            return wrong == 0 && slowestDuringSwaps <= maxNanos && reloads > 0;
+        }
+
+        public synchronized String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("%d calls, %d of them during a reload or rollback%n",
+                                        calls, callsDuringSwaps));
+            result.append(String.format("%d reloads and %d rollbacks, %.2f ms per reload%n",
+                                        reloads, rollbacks,
+                                        reloads == 0 ? 0 : swapNanos / 1e6 / reloads));
+            result.append(String.format("slowest call during a swap: %.3f ms (bound %d ms)%n",
+                                        slowestDuringSwaps / 1e6, maxNanos / 1_000_000));
+            if (reloads > 0 && swapNanos / reloads <= maxNanos) {
+                result.append("    (reloads are faster than the bound, so a reader waiting for one"
+                              + " would go unnoticed; train on more data)")
+                      .append(System.lineSeparator());
+            }
+            result.append(String.format("wrong labels: %d%n", wrong));
+            for (String example : examples) {
+                result.append("    ").append(example).append(System.lineSeparator());
+            }
+            result.append(passed() ? "PASSED" : "FAILED");
+            return result.toString();
+        }
+
+        // Helper method - counts a wrong label, keeping the first few
+        private synchronized void wrong(String example) {
+            wrong++;
+            if (examples.size() < EXAMPLES) {
+                examples.add(example);
+            }
+        }
+
+        // Helper method - adds what one reader saw
+        private synchronized void reader(long calls, long callsDuringSwaps, long slowest) {
+            this.calls += calls;
+            this.callsDuringSwaps += callsDuringSwaps;
+            this.slowestDuringSwaps = Math.max(this.slowestDuringSwaps, slowest);
+        }
+
+        // Helper method - adds what the reloading thread did
+        private synchronized void swapper(int reloads, int rollbacks, long swapNanos) {
+            this.reloads = reloads;
+            this.rollbacks = rollbacks;
+            this.swapNanos = swapNanos;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+// This class scores a large labeled CSV file with a saved model across several worker JVMs on
+//      this machine, so no single heap or garbage collector has to handle the whole job.
+//      The coordinator splits the file into byte ranges that start and end on row boundaries and
+//      starts one worker process per range. Each worker loads the model, classifies the rows of
+//      its range and streams its predictions, followed by its label counts, back over its
+//      standard output. The coordinator writes the predictions to a file of its own for each
+//      range, merges the counts into one report and finally joins the prediction files in file
+//      order.
+// A worker that crashes, exits with an error or sends an incomplete reply has its range thrown
+//      away and scored again by a fresh worker, up to MAX_ATTEMPTS times. So does a worker that
+//      hangs: one that sends nothing for the timeout (loading the model included), or doesn't
+//      exit within the timeout of its last reply, is stopped and counts as a failed attempt.
+// Worker protocol (DataOutputStream on the worker's standard output):
+//          byte 'P', UTF label         for every row, in order
+//          byte 'E', long rows         once all rows are sent, then for every label seen:
+//          int count, then count times UTF label, long total, long correct, long predicted
+public class ShardedScorer {
+    public static final int MAX_ATTEMPTS = 3;
+    // JVM options given to every worker, e.g. "-Xmx256m", split on whitespace
+    public static final String WORKER_OPTIONS = "classifier.workerOptions";
+    // Milliseconds a worker may go without replying, or take to exit once done
+    public static final String WORKER_TIMEOUT = "classifier.workerTimeout";
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte PREDICTION = 'P';
+    private static final byte END = 'E';
+
+    // States of the row boundary scan, the same as those of CsvReader
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final String modelFile;
+    private final int workers;
+    private final List<String> workerOptions;
+    private final long timeoutMillis;
+
+    // Constructs a new ShardedScorer that scores with the model saved in the given file
+    //      (a binary model if it ends in Client.BINARY_EXTENSION, a text model otherwise), on
+    //      the given number of worker JVMs started with the given options, each allowed
+    //      DEFAULT_TIMEOUT_MILLIS without replying
+    // Throws an IllegalArgumentException
+    //      If the model file or options are null, or workers is less than 1
+    public ShardedScorer(String modelFile, int workers, List<String> workerOptions) {
+        this(modelFile, workers, workerOptions, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    // Constructs a new ShardedScorer as above, whose workers are stopped and count as failed if
+    //      they send nothing for 'timeoutMillis', or take longer than that to exit once done
+    // Throws an IllegalArgumentException
+    //      If the model file or options are null, or workers or timeoutMillis is less than 1
+    public ShardedScorer(String modelFile, int workers, List<String> workerOptions,
+                         long timeoutMillis) {
+        if (modelFile == null || workerOptions == null || workers < 1 || timeoutMillis < 1) {
+            throw new IllegalArgumentException();
+        }
+        for (String option : workerOptions) {
+            if (option == null) {
+                throw new IllegalArgumentException();
+            }
+        }
+        this.modelFile = modelFile;
+        this.workers = workers;
+        this.workerOptions = List.copyOf(workerOptions);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // Scores a CSV file with a saved model on several worker JVMs and prints the report, or runs
+    //      as one of those workers.
+    // Arguments: [model file] [CSV file] [workers] [predictions file], defaulting to one worker
+    //      per core and no predictions file. Workers get the options in the system property
+    //      WORKER_OPTIONS, and the timeout in WORKER_TIMEOUT (DEFAULT_TIMEOUT_MILLIS if unset).
+    // Throws an IOException
+    //      If a file can't be read or written, or a shard fails MAX_ATTEMPTS times
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--worker")) {
+            work(args);
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: ShardedScorer <model file> <CSV file> [workers] "
+                               + "[predictions file]");
+            return;
+        }
+        int workers = args.length > 2 ? Integer.parseInt(args[2])
+                                      : Runtime.getRuntime().availableProcessors();
+        String options = System.getProperty(WORKER_OPTIONS, "").trim();
+        List<String> workerOptions = options.isEmpty() ? List.of()
+                                                       : Arrays.asList(options.split("\\s+"));
+        long timeout = Long.getLong(WORKER_TIMEOUT, DEFAULT_TIMEOUT_MILLIS);
+        ShardedScorer scorer = new ShardedScorer(args[0], workers, workerOptions, timeout);
+        System.out.println(scorer.score(args[1], Client.LABEL_INDEX, Client.CONTENT_INDEX,
+                                        args.length > 3 ? args[3] : null));
+    }
+
+    // Scores every row of the given CSV file (skipping its first row of titles), taking each
+    //      label from 'labelIndex' and each text from 'contentIndex'. If 'predictionsFile' isn't
+    //      null, the predicted labels are written to it one per line in file order.
+    // 'fileName' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the model file can't be read
+    // Throws an IOException
+    //      If a file can't be read or written, or a shard fails MAX_ATTEMPTS times
+    public Report score(String fileName, int labelIndex, int contentIndex,
+                        String predictionsFile) throws IOException {
+        if (!Files.isReadable(Paths.get(modelFile))) {
+            throw new FileNotFoundException(modelFile);
+        }
+        long start = System.nanoTime();
+        long[] bounds = split(fileName, workers);
+        int shards = bounds.length - 1;
+        Path[] parts = new Path[shards];
+        List<Process> running = new CopyOnWriteArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(shards, task -> {
+            Thread thread = new Thread(task, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "shard-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Report report = new Report();
+        try {
+            List<Future<Shard>> futures = new ArrayList<>();
+            for (int s = 0; s < shards; s++) {
+                if (predictionsFile != null) {
+                    parts[s] = Files.createTempFile(Paths.get(predictionsFile).toAbsolutePath()
+                                                         .getParent(), "shard-" + s + "-", ".tmp");
+                }
+                int shard = s;
+                futures.add(pool.submit(() -> run(shard, fileName, bounds[shard],
+                                                  bounds[shard + 1], labelIndex, contentIndex,
+                                                  parts[shard], running, watchdog)));
+            }
+            for (Future<Shard> future : futures) {
+                report.add(future.get());
+            }
+            if (predictionsFile != null) {
+                join(parts, Paths.get(predictionsFile));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scoring");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            watchdog.shutdownNow();
+            for (Process process : running) {
+                process.destroyForcibly();
+            }
+            for (Path part : parts) {
+                if (part != null) {
+                    Files.deleteIfExists(part);
+                }
+            }
+        }
+        report.finish(shards, System.nanoTime() - start);
+        return report;
+    }
+
+    // Returns the byte offsets splitting the rows of the given CSV file (after its first row of
+    //      titles) into at most the given number of shards of about the same size: shard i spans
+    //      [offsets[i], offsets[i + 1]). Every offset is the start of a row or the end of the
+    //      file. Quoted fields may contain line breaks, so the file is read once from the start
+    //      to tell the line breaks that end rows from the others.
+    // 'fileName' should be non-null and shards at least 1.
+    // Throws an IOException
+    //      If the file can't be read
+    public static long[] split(String fileName, int shards) throws IOException {
+        long size = Files.size(Paths.get(fileName));
+        List<Long> offsets = new ArrayList<>();
+        long target = -1;
+        long position = 0;
+        int state = FIELD_START;
+        boolean blank = true;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(fileName)) {
+            int count;
+            while ((count = in.read(buffer)) > 0 && offsets.size() < shards) {
+                for (int i = 0; i < count; i++) {
+                    int c = buffer[i];
+                    position++;
+                    if (state == QUOTED) {
+                        if (c == '"') {
+                            state = QUOTE_IN_QUOTED;
+                        }
+                        continue;
+                    }
+                    if (c == '\n' || c == '\r') {
+                        state = FIELD_START;
+                        if (blank) {
+                            continue;
+                        }
+                        if (target < 0) {
+                            // The end of the first row of titles, where the data starts
+                            target = position;
+                        }
+                        if (position >= target) {
+                            offsets.add(position);
+                            long start = offsets.get(0);
+                            target = start + (size - start) * offsets.size() / shards;
+                            if (offsets.size() == shards) {
+                                break;
+                            }
+                        }
+                        continue;
+                    }
+                    blank = false;
+                    if (c == ',') {
+                        state = FIELD_START;
+                    } else if (state == QUOTE_IN_QUOTED) {
+                        state = c == '"' ? QUOTED : UNQUOTED;
+                    } else if (state == FIELD_START && c == '"') {
+                        state = QUOTED;
+                    } else {
+                        state = UNQUOTED;
+                    }
+                }
+            }
+        }
+        if (offsets.isEmpty()) {
+            offsets.add(size);
+        }
+        offsets.add(size);
+        long[] result = new long[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+        return result;
+    }
+
+    // Helper method - scores one shard on a worker process, starting a new one whenever the last
+    //      fails, and returns its counts. The predictions go to 'part' unless it is null. The
+    //      watchdog stops workers that stop replying.
+    private Shard run(int shard, String fileName, long start, long end, int labelIndex,
+                      int contentIndex, Path part, List<Process> running,
+                      ScheduledExecutorService watchdog) throws IOException {
+        if (start == end) {
+            return new Shard(0);
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(workerOptions);
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                               ShardedScorer.class.getName(), "--worker", modelFile, fileName,
+                               Long.toString(start), Long.toString(end),
+                               Integer.toString(labelIndex), Integer.toString(contentIndex)));
+        IOException failure = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while scoring");
+            }
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            running.add(process);
+            Progress progress = new Progress();
+            ScheduledFuture<?> check = watchdog.scheduleAtFixedRate(() -> progress.check(process),
+                    timeoutMillis, timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                Shard result = receive(process.getInputStream(), part, progress);
+                check.cancel(false);
+                if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Worker didn't exit within " + timeoutMillis + " ms");
+                }
+                int exit = process.exitValue();
+                if (exit != 0) {
+                    throw new IOException("Worker exited with status " + exit);
+                }
+                result.attempts = attempt;
+                return result;
+            } catch (IOException e) {
+                failure = progress.timedOut
+                          ? new IOException("Worker sent nothing for " + timeoutMillis + " ms", e)
+                          : e;
+                System.err.printf("Shard %d [%d, %d) failed on attempt %d of %d: %s%n", shard,
+                                  start, end, attempt, MAX_ATTEMPTS, failure.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while scoring");
+            } finally {
+                check.cancel(false);
+                process.destroyForcibly();
+                running.remove(process);
+            }
+        }
+        throw new IOException("Shard " + shard + " failed " + MAX_ATTEMPTS + " times", failure);
+    }
+
+    // Helper method - reads a worker's reply, writing its predictions to 'part' (from the
+    //      start, dropping whatever an earlier attempt left there) unless it is null, and
+    //      recording every part of the reply in 'progress'
+    private static Shard receive(InputStream reply, Path part, Progress progress)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(reply, BUFFER_SIZE));
+        Writer out = part == null ? Writer.nullWriter()
+                                  : Files.newBufferedWriter(part, StandardCharsets.UTF_8);
+        long predictions = 0;
+        try (out) {
+            while (true) {
+                byte tag = in.readByte();
+                progress.received++;
+                if (tag == PREDICTION) {
+                    out.write(in.readUTF());
+                    out.write(System.lineSeparator());
+                    predictions++;
+                } else if (tag == END) {
+                    break;
+                } else {
+                    throw new IOException("Unexpected reply from worker: " + tag);
+                }
+            }
+            long rows = in.readLong();
+            if (rows != predictions) {
+                throw new IOException("Worker sent " + predictions + " of " + rows + " rows");
+            }
+            Shard shard = new Shard(rows);
+            int labels = in.readInt();
+            for (int i = 0; i < labels; i++) {
+                String label = in.readUTF();
+                shard.total.put(label, in.readLong());
+                shard.correct.put(label, in.readLong());
+                shard.predicted.put(label, in.readLong());
+            }
+            return shard;
+        } catch (EOFException e) {
+            throw new IOException("Worker stopped after " + predictions + " rows");
+        }
+    }
+
+    // Helper method - joins the given prediction files, in order, into the given file
+    private static void join(Path[] parts, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long done = 0; done < size; ) {
+                        done += in.transferTo(done, size - done, out);
+                    }
+                }
+            }
+        }
+    }
+
+    // Helper method - the worker side: classifies the rows in a byte range of a CSV file and
+    //      replies on standard output. Anything else printed goes to the error stream instead.
+    // Arguments: --worker [model file] [CSV file] [start] [end] [label index] [content index]
+    private static void work(String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), BUFFER_SIZE));
+        System.setOut(System.err);
+        String modelFile = args[1];
+        Classifier c = modelFile.endsWith(Client.BINARY_EXTENSION)
+                       ? Classifier.loadBinary(modelFile)
+                       : new Classifier(new Scanner(new File(modelFile),
+                                                    StandardCharsets.UTF_8));
+        long start = Long.parseLong(args[3]);
+        long end = Long.parseLong(args[4]);
+        int labelIndex = Integer.parseInt(args[5]);
+        int contentIndex = Integer.parseInt(args[6]);
+        Map<String, long[]> counts = new TreeMap<>();
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(args[2]), StandardOpenOption.READ);
+             CsvReader reader = new CsvReader(new InputStreamReader(
+                     new RangeInputStream(channel.position(start), end - start),
+                     StandardCharsets.UTF_8))) {
+            while (reader.hasNext()) {
+                List<String> row = reader.next();
+                String result = c.classify(row.get(contentIndex));
+                String label = row.get(labelIndex);
+                out.writeByte(PREDICTION);
+                out.writeUTF(result);
+                counts.computeIfAbsent(label, l -> new long[3])[0]++;
+                counts.computeIfAbsent(result, l -> new long[3])[2]++;
+                if (result.equals(label)) {
+                    counts.get(label)[1]++;
+                }
+                rows++;
+            }
+        }
+        out.writeByte(END);
+        out.writeLong(rows);
+        out.writeInt(counts.size());
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            for (long count : entry.getValue()) {
+                out.writeLong(count);
+            }
+        }
+        out.flush();
+    }
+
+    // This class is what one worker reported for its shard: the number of rows, and for each
+    //      label the number of rows that have it, that were classified correctly as it and that
+    //      were predicted as it
+    private static class Shard {
+        private final long rows;
+        private final Map<String, Long> total = new HashMap<>();
+        private final Map<String, Long> correct = new HashMap<>();
+        private final Map<String, Long> predicted = new HashMap<>();
+        private int attempts;
+
+        private Shard(long rows) {
+            this.rows = rows;
+        }
+    }
+
+    // This class tracks how much of a worker's reply has arrived, so the watchdog can stop a
+    //      worker that has sent nothing since it last checked
+    private static class Progress {
+        // Written only by the thread reading the reply
+        private volatile long received;
+        private volatile boolean timedOut;
+        // Only used by the watchdog
+        private long checked;
+
+        // Helper method - stops the worker if nothing has arrived since the last check (or, the
+        //      first time, since it started)
+        private void check(Process process) {
+            long now = received;
+            if (now == checked) {
+                timedOut = true;
+                process.destroyForcibly();
+            }
+            checked = now;
+        }
+    }
+
+    // This class is the merged result of scoring a file: the number of rows, how often each
+    //      label was predicted, the accuracy the same way as Classifier.calculateAccuracy (for
+    //      each label classified correctly at least once, plus "Overall"), and how the run went
+    public static class Report {
+        private long rows;
+        private final Map<String, Long> total = new TreeMap<>();
+        private final Map<String, Long> correct = new TreeMap<>();
+        private final Map<String, Long> predicted = new TreeMap<>();
+        private int shards;
+        private int retries;
+        private long nanos;
+
+        private Report() {
+        }
+
+        // Returns the number of rows scored
+        public long getRows() {
+            return rows;
+        }
+
+        // Returns the number of times each label was predicted
+        public Map<String, Long> getPredictedCounts() {
+            return Collections.unmodifiableMap(predicted);
+        }
+
+        // Returns the accuracy for each label classified correctly at least once, plus
+        //      "Overall"
+        public Map<String, Double> getAccuracy() {
+            Map<String, Double> accuracy = new TreeMap<>();
+            long all = 0;
+            long allCorrect = 0;
+            for (Map.Entry<String, Long> entry : total.entrySet()) {
+                long right = correct.getOrDefault(entry.getKey(), 0L);
+                if (right > 0) {
+                    accuracy.put(entry.getKey(), (double) right / entry.getValue());
+                }
+                all += entry.getValue();
+                allCorrect += right;
+            }
+            accuracy.put("Overall", (double) allCorrect / all);
+            return accuracy;
+        }
+
+        // Returns the number of shards that had to be scored again after a worker failed
+        public int getRetries() {
+            return retries;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+            return String.format("Scored %d rows in %d shards in %.2f s (%.0f rows/s), "
+                                 + "%d retries%nPredicted: %s%nAccuracy: %s", rows, shards,
+                                 seconds, rows / seconds, retries, predicted, getAccuracy());
+        }
+
+        // Helper method - adds the counts of one shard. Workers send all three counts for every
+        //      label they saw, so counts of 0 are skipped, keeping labels that were never
+        //      predicted out of the predicted counts.
+        private void add(Shard shard) {
+            rows += shard.rows;
+            retries += Math.max(0, shard.attempts - 1);
+            merge(total, shard.total);
+            merge(correct, shard.correct);
+            merge(predicted, shard.predicted);
+        }
+
+        // Helper method - adds every count above 0 of 'counts' to 'into'
+        private static void merge(Map<String, Long> into, Map<String, Long> counts) {
+            counts.forEach((label, count) -> {
+                if (count > 0) {
+                    into.merge(label, count, Long::sum);
+                }
+            });
+        }
+
+        // Helper method - records how the run went once every shard is in
+        private void finish(int shards, long nanos) {
+            this.shards = shards;
+            this.nanos = nanos;
+        }
+    }
+
+    // This class reads a given number of bytes of a channel from its current position
+    private static class RangeInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        private RangeInputStream(FileChannel channel, long length) {
+            this.in = Channels.newInputStream(channel);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int c = in.read();
+            if (c >= 0) {
+                remaining--;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = in.read(bytes, offset, (int) Math.min(length, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+    }
+}
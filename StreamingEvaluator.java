@@ -0,0 +1,273 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+import java.io.*;
+import java.nio.charset.*;
+
+// This class classifies every row of a CSV file and writes the labels out in file order, one per
+//      line, as they are produced. Work flows through three stages joined by bounded queues,
+//      which hand rows on in batches of up to BATCH_SIZE (smaller when the workers are idle):
+//          1. a reader thread parses rows and queues their texts,
+//          2. a pool of worker threads classifies the raw texts, each in one scan that only
+//             looks up the words of the model (see Classifier.classifyTexts), so no TextBlock
+//             is built and new words in the file don't make the Vocabulary grow,
+//          3. the calling thread writes the labels, flushing every window and whenever it has
+//             waited a while for more.
+//      A full queue blocks the stage feeding it, and at most 'window' rows are between being read
+//      and being written at any time, so memory stays the same however large the file is.
+//      Workers may finish batches out of order; the last stage holds early results back until
+//      every row before them has been written.
+public class StreamingEvaluator {
+    public static final int DEFAULT_WINDOW = 4096;
+    // Rows handed between the stages at a time, so threads don't have to wake up for every row
+    private static final int BATCH_SIZE = 64;
+    // Milliseconds the last stage waits for a label before flushing what it has written
+    private static final long FLUSH_MILLIS = 100;
+
+    private final Classifier classifier;
+    private final int workers;
+    private final int window;
+
+    // Constructs a new StreamingEvaluator classifying with the given Classifier on the given
+    //      number of worker threads, with at most 'window' rows in flight
+    // Throws an IllegalArgumentException
+    //      If the classifier is null, or workers or window is less than 1
+    public StreamingEvaluator(Classifier classifier, int workers, int window) {
+        if (classifier == null || workers < 1 || window < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.classifier = classifier;
+        this.workers = workers;
+        this.window = window;
+    }
+
+    // Classifies every row of a CSV file with a saved model, writing the labels to the given
+    //      output file or to the console, and reports the rows per second on the error stream.
+    // Arguments: [model file] [CSV file] [output file]. Model files ending in
+    //      Client.BINARY_EXTENSION are loaded as binary models, other files as text models.
+    // Throws an IOException
+    //      If the model or CSV file can't be read or the output can't be written
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: StreamingEvaluator <model file> <CSV file> [output file]");
+            return;
+        }
+        Classifier c = args[0].endsWith(Client.BINARY_EXTENSION)
+                       ? Classifier.loadBinary(args[0])
+                       : new Classifier(new Scanner(new File(args[0]),
+                                                    StandardCharsets.UTF_8));
+        StreamingEvaluator evaluator = new StreamingEvaluator(c,
+                Runtime.getRuntime().availableProcessors(), DEFAULT_WINDOW);
+        long start = System.nanoTime();
+        long rows;
+        if (args.length > 2) {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(args[2]), StandardCharsets.UTF_8))) {
+                rows = evaluator.evaluate(args[1], Client.CONTENT_INDEX, out);
+            }
+        } else {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+                                                                   StandardCharsets.UTF_8));
+            rows = evaluator.evaluate(args[1], Client.CONTENT_INDEX, out);
+            out.flush();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Classified %d rows in %.2f s (%.0f rows/s)%n", rows, seconds,
+                          rows / seconds);
+    }
+
+    // Classifies the text in column 'contentIndex' of every row of the given CSV file (skipping
+    //      its first row of titles), writing each label to 'out' on its own line in file order.
+    //      The Writer is flushed every 'window' labels, and whenever no label has been ready
+    //      for FLUSH_MILLIS, so labels show up as they are produced, but it is not closed.
+    //      Returns the number of rows classified.
+    // 'fileName' and 'out' should be non-null.
+    // Throws an IOException
+    //      If the file can't be read or the output can't be written
+    // Throws an IndexOutOfBoundsException
+    //      If a row has no column 'contentIndex'
+    public long evaluate(String fileName, int contentIndex, Writer out) throws IOException {
+        Pipeline pipeline = new Pipeline(CsvReader.stream(fileName), contentIndex);
+        try {
+            return pipeline.run(out);
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    // This class is a batch of consecutive rows on its way through the pipeline: its position
+    //      among the batches of the file, and the texts of its rows or, once classified, their
+    //      labels
+    private static class Batch {
+        private final long index;
+        private final List<String> texts;
+        private final String[] labels;
+
+        private Batch(long index, List<String> texts, String[] labels) {
+            this.index = index;
+            this.texts = texts;
+            this.labels = labels;
+        }
+    }
+
+    // This class is a single run of the pipeline over one file
+    private class Pipeline {
+        // Marks the end of the batches in a queue; each worker passes it on once and stops
+        private final Batch end = new Batch(-1, null, null);
+
+        private final Stream<List<String>> rows;
+        private final int contentIndex;
+        private final int batchSize;
+        private final BlockingQueue<Batch> texts;
+        private final BlockingQueue<Batch> results;
+        private final Semaphore inFlight;
+        private final List<Thread> threads;
+        private final AtomicReference<Throwable> failure;
+        private final Thread owner;
+
+        private Pipeline(Stream<List<String>> rows, int contentIndex) {
+            this.rows = rows;
+            this.contentIndex = contentIndex;
+            this.batchSize = Math.min(BATCH_SIZE, window);
+            int batches = Math.max(1, window / batchSize / 2);
+            this.texts = new ArrayBlockingQueue<>(batches);
+            this.results = new ArrayBlockingQueue<>(batches);
+            this.inFlight = new Semaphore(window);
+            this.threads = new ArrayList<>();
+            this.failure = new AtomicReference<>();
+            this.owner = Thread.currentThread();
+        }
+
+        // Starts the reader and the workers, then writes the label of every row in order.
+        //      Returns the number of rows written.
+        private long run(Writer out) throws IOException {
+            start("evaluate-reader", this::read);
+            for (int i = 0; i < workers; i++) {
+                start("evaluate-classifier-" + i, this::classify);
+            }
+            // Batches that are done but still wait on an earlier batch, by index modulo the
+            //      number of batches that can be in flight: all of them full but the last
+            String[][] ready = new String[window / batchSize + 1][];
+            long next = 0;
+            long written = 0;
+            long flushed = 0;
+            int ended = 0;
+            try {
+                while (ended < workers) {
+                    Batch batch = results.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        out.flush();
+                        flushed = written;
+                        batch = results.take();
+                    }
+                    if (batch == end) {
+                        ended++;
+                        continue;
+                    }
+                    ready[(int) (batch.index % ready.length)] = batch.labels;
+                    int slot;
+                    while (ready[slot = (int) (next % ready.length)] != null) {
+                        for (String label : ready[slot]) {
+                            out.write(label);
+                            out.write(System.lineSeparator());
+                        }
+                        written += ready[slot].length;
+                        inFlight.release(ready[slot].length);
+                        ready[slot] = null;
+                        next++;
+                    }
+                    if (written - flushed >= window) {
+                        out.flush();
+                        flushed = written;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Throwable cause = failure.get();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while evaluating");
+            }
+            out.flush();
+            return written;
+        }
+
+        // Stops every thread of the pipeline and closes the file
+        private void stop() {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            rows.close();
+        }
+
+        // Helper method - the loop of the reader thread: queue the texts of the rows in batches
+        //      of 'batchSize', as long as fewer than 'window' rows are in flight. A smaller batch
+        //      is queued whenever the workers have nothing left to do, so rows that trickle in
+        //      slowly don't wait for a batch to fill up.
+        private void read() {
+            long index = 0;
+            try {
+                Iterator<List<String>> it = rows.iterator();
+                List<String> batch = new ArrayList<>(batchSize);
+                while (it.hasNext()) {
+                    String text = it.next().get(contentIndex);
+                    inFlight.acquire();
+                    batch.add(text);
+                    if (batch.size() == batchSize || texts.isEmpty()) {
+                        texts.put(new Batch(index++, batch, null));
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    texts.put(new Batch(index, batch, null));
+                }
+                for (int i = 0; i < workers; i++) {
+                    texts.put(end);
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by stop()
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            }
+        }
+
+        // Helper method - the loop of each worker thread: classify batches of texts as they
+        //      are, without building a TextBlock for any of them
+        private void classify() {
+            try {
+                Batch batch;
+                while ((batch = texts.take()) != end) {
+                    String[] labels = classifier.classifyTexts(batch.texts);
+                    results.put(new Batch(batch.index, null, labels));
+                }
+                results.put(end);
+            } catch (InterruptedException e) {
+                // Interrupted by stop()
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            }
+        }
+
+        // Helper method - records the failure of a reader or worker thread and interrupts the
+        //      thread running the pipeline, which then rethrows it
+        private void fail(Throwable cause) {
+            if (failure.compareAndSet(null, cause)) {
+                owner.interrupt();
+            }
+        }
+
+        // Helper method - starts a daemon thread of this pipeline running the given task
+        private void start(String name, Runnable task) {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+}
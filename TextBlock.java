@@ -1,65 +1,327 @@
 import java.util.*;
 
-// This class represents a piece of text data that can be classified
+// This class represents a piece of text data that can be classified.
+// Subclasses may keep their words somewhere other than the heap (see CorpusStore); they have to
+//      override every public method that reads the words, as well as onHeap().
 public class TextBlock {
-    private Map<String, Integer> wordCounts;
+    // Distinct Vocabulary IDs of the words in this text, sorted ascending
+    private int[] ids;
+    // Number of times each word in 'ids' appeared, at the same index
+    private int[] counts;
+    // Order in which each word in 'ids' first appeared in the text (0 for the first word), at
+    //      the same index
+    private int[] rank;
     private double totalWords;
 
     // Constructs a new TextBlock from the provided content String
     public TextBlock(String content) {
-        this.wordCounts = new HashMap<>();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         parseContent(content);
+        if (Metrics.ENABLED) {
+            Metrics.PARSE.record(System.nanoTime() - start);
+        }
+    }
+
+    // Constructs a new TextBlock from words that have already been counted: their Vocabulary IDs
+    //      in ascending order, and for each at the same index the number of times it appeared and
+    //      the order in which it first appeared (0 for the first word). The arrays are not copied.
+    protected TextBlock(int[] ids, int[] counts, int[] rank, double totalWords) {
+        this.ids = ids;
+        this.counts = counts;
+        this.rank = rank;
+        this.totalWords = totalWords;
+    }
+
+    // Constructs a new TextBlock without any words of its own, for subclasses that keep their
+    //      words elsewhere
+    protected TextBlock() {
+    }
+
+    // Returns a TextBlock of the given text that only holds the words already in the Vocabulary.
+    //      Other words still count toward the total number of words, so every word in the
+    //      Vocabulary, and so every feature of any model, has the same probability as in
+    //      new TextBlock(text). Unlike the constructor, this never adds words to the Vocabulary,
+    //      so classifying any amount of new text this way doesn't make it grow.
+    // 'content' should be non-null.
+    public static TextBlock known(CharSequence content) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        TextBlock block = new TextBlock();
+        long[] pairs = new long[16];
+        int size = 0;
+        int total = 0;
+        Tokenizer tokens = new Tokenizer(content);
+        while (tokens.next()) {
+            total++;
+            int id = tokens.id();
+            if (id >= 0) {
+                if (size == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, size * 2);
+                }
+                pairs[size] = ((long) id << 32) | size;
+                size++;
+            }
+        }
+        block.totalWords = total;
+        block.countTokens(pairs, size);
+        if (Metrics.ENABLED) {
+            Metrics.PARSE.record(System.nanoTime() - start);
+        }
+        return block;
+    }
+
+    // Returns a TextBlock with the same words as this one that keeps them in heap arrays, which
+    //      is this TextBlock itself unless a subclass keeps its words elsewhere
+    protected TextBlock onHeap() {
+        return this;
     }
 
     // Helper method - parses the content from the provided content String,
-    //      populating the word -> count map and counting the total words/tokens
+    //      populating the sorted word ID and count arrays and counting the total words/tokens
     private void parseContent(String content) {
-        Scanner sc = new Scanner(content);
-        while (sc.hasNext()) {
-            String word = sc.next();
-            if (!wordCounts.containsKey(word)) {
-                wordCounts.put(word, 0);
+        // Collect (ID, position) pairs so sorting them groups equal IDs, first position first
+        long[] pairs = new long[16];
+        int size = 0;
+        Tokenizer tokens = new Tokenizer(content);
+        while (tokens.next()) {
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, size * 2);
+            }
+            pairs[size] = ((long) tokens.intern() << 32) | size;
+            size++;
+        }
+        totalWords = size;
+        countTokens(pairs, size);
+    }
+
+    // Helper method - fills 'ids', 'counts' and 'rank' from the first 'size' (ID, position)
+    //      pairs, one for every token of the text
+    private void countTokens(long[] pairs, int size) {
+        Arrays.sort(pairs, 0, size);
+
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || (int) (pairs[i] >>> 32) != (int) (pairs[i - 1] >>> 32)) {
+                distinct++;
+            }
+        }
+        ids = new int[distinct];
+        counts = new int[distinct];
+        long[] firstSeen = new long[distinct];
+        int d = -1;
+        for (int i = 0; i < size; i++) {
+            int id = (int) (pairs[i] >>> 32);
+            if (d < 0 || ids[d] != id) {
+                d++;
+                ids[d] = id;
+                firstSeen[d] = ((pairs[i] & 0xFFFFFFFFL) << 32) | d;
             }
-            wordCounts.put(word, wordCounts.get(word) + 1);
-            totalWords++;
+            counts[d]++;
         }
+
+        Arrays.sort(firstSeen);
+        rank = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            rank[(int) firstSeen[i]] = i;
+        }
+    }
+
+    // Helper method - returns the index of the given word ID within 'ids', or a negative number
+    //      if this TextBlock doesn't contain it
+    private int indexOf(int wordId) {
+        return Arrays.binarySearch(ids, wordId);
     }
 
     // Returns the word probability for the given word.
     // (number of times the word appeared / total number of all words)
     public double get(String word) {
-        if (totalWords != 0 && wordCounts.containsKey(word)) {
-            return wordCounts.get(word) / totalWords;
+        return get(Vocabulary.id(word));
+    }
+
+    // Returns the word probability for the word with the given Vocabulary ID.
+    // (number of times the word appeared / total number of all words)
+    public double get(int wordId) {
+        if (totalWords != 0 && wordId >= 0) {
+            int index = indexOf(wordId);
+            if (index >= 0) {
+                return counts[index] / totalWords;
+            }
         }
 
         return 0;
     }
-    
+
+    // Returns an estimate of the bytes of heap this TextBlock retains, assuming a 64-bit JVM with
+    //      compressed references. Words shared through the Vocabulary are not counted.
+    public long retainedBytes() {
+        // Object header, three array references and a double, then the three int arrays
+        return 32 + 3 * (16 + align(4L * ids.length));
+    }
+
+    // Helper method - rounds the given number of bytes up to a multiple of 8
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    // Returns the total number of words (tokens) in this TextBlock
+    public int wordCount() {
+        return (int) totalWords;
+    }
+
+    // Passes every distinct word of this TextBlock to the given action, in ascending order of
+    //      their Vocabulary IDs, along with the number of times it appeared and the order in which
+    //      it first appeared (0 for the first word)
+    // 'action' should be non-null.
+    public void forEachWord(WordAction action) {
+        for (int i = 0; i < ids.length; i++) {
+            action.accept(ids[i], counts[i], rank[i]);
+        }
+    }
+
     // Returns a Set of all valid features for this TextBlock.
-    public Set<String> getFeatures() { return wordCounts.keySet(); }
+    public Set<String> getFeatures() {
+        return new AbstractSet<String>() {
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int next = 0;
+
+                    public boolean hasNext() {
+                        return next < ids.length;
+                    }
+
+                    public String next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return Vocabulary.word(ids[next++]);
+                    }
+                };
+            }
+
+            public boolean contains(Object o) {
+                return o instanceof String && containsFeature((String) o);
+            }
+
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
 
     // Returns true if TextBlock contains this feature. False otherwise.
-    public boolean containsFeature(String word) { return wordCounts.containsKey(word); }
-    
+    public boolean containsFeature(String word) {
+        int wordId = Vocabulary.id(word);
+        return wordId >= 0 && indexOf(wordId) >= 0;
+    }
+
     // Returns a feature that has the greatest difference in word probability between this
     // instance and provided 'other'
     public String findBiggestDifference(TextBlock other) {
-        // Find the word with the largest probability difference between this and other
-        Set<String> allWords = new HashSet<>(this.wordCounts.keySet());
-        allWords.addAll(other.wordCounts.keySet());
+        other = other.onHeap();
+        // Both ID arrays are sorted, so the words of both texts can be walked together in one
+        // merge. The first pass only counts the words of the union, which decides how ties are
+        // broken (see tieBreakKey).
+        int common = 0;
+        for (int i = 0, j = 0; i < this.ids.length && j < other.ids.length; ) {
+            if (this.ids[i] == other.ids[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (this.ids[i] < other.ids[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int mask = unionCapacity(this.ids.length,
+                                 this.ids.length + other.ids.length - common) - 1;
 
-        String bestWord = null;
+        int bestWord = -1;
+        long bestKey = 0;
         double highestDiff = 0;
-        for (String word : allWords) {
-            double diff = (this.containsFeature(word) ? this.get(word) : 0) - 
-                          (other.containsFeature(word) ? other.get(word) : 0);
+        int i = 0;
+        int j = 0;
+        while (i < this.ids.length || j < other.ids.length) {
+            int word;
+            double diff;
+            int group;
+            int order;
+            if (j == other.ids.length || (i < this.ids.length && this.ids[i] < other.ids[j])) {
+                word = this.ids[i];
+                diff = this.counts[i] / this.totalWords;
+                group = 0;
+                order = this.rank[i];
+                i++;
+            } else if (i == this.ids.length || this.ids[i] > other.ids[j]) {
+                word = other.ids[j];
+                diff = 0 - other.counts[j] / other.totalWords;
+                group = 1;
+                order = other.rank[j];
+                j++;
+            } else {
+                word = this.ids[i];
+                diff = this.counts[i] / this.totalWords - other.counts[j] / other.totalWords;
+                group = 0;
+                order = this.rank[i];
+                i++;
+                j++;
+            }
             diff = Math.abs(diff);
-            if (diff > highestDiff) {
-                bestWord = word;
-                highestDiff = diff;
+            if (diff >= highestDiff && diff > 0) {
+                long key = tieBreakKey(word, mask, group, order);
+                if (diff > highestDiff || key < bestKey) {
+                    bestWord = word;
+                    bestKey = key;
+                    highestDiff = diff;
+                }
             }
         }
 
-        return bestWord;
+        return bestWord < 0 ? null : Vocabulary.word(bestWord);
+    }
+
+    // Returns the key deciding which of several words with the same, biggest difference between
+    //      this TextBlock and the other findBiggestDifference picks: the smallest key wins.
+    //      'union' is the number of distinct words in either TextBlock. This lets other ways of
+    //      finding the biggest difference (see Classifier.SplitFinder) pick the same word.
+    // 'other' should be non-null, and the word should be in one of the TextBlocks.
+    protected long tieBreakKey(TextBlock other, int word, int union) {
+        int mask = unionCapacity(ids.length, union) - 1;
+        int index = indexOf(word);
+        if (index >= 0) {
+            return tieBreakKey(word, mask, 0, rank[index]);
+        }
+        other = other.onHeap();
+        return tieBreakKey(word, mask, 1, other.rank[other.indexOf(word)]);
+    }
+
+    // Helper method - returns the key deciding which of several words with the same difference
+    //      findBiggestDifference picks: the smallest key wins. Words used to be compared in the
+    //      iteration order of a HashSet holding this TextBlock's words followed by the other's,
+    //      and the first biggest difference was kept. That order sorts words by their hash
+    //      bucket, then puts this TextBlock's words before the other's, each in the order they
+    //      first appeared. 'mask' is the bucket mask of that HashSet, 'group' is 0 for words of
+    //      this TextBlock and 1 for words only in the other, and 'order' is the word's rank in
+    //      its group.
+    private static long tieBreakKey(int word, int mask, int group, int order) {
+        int hash = Vocabulary.hash(word);
+        long bucket = (hash ^ (hash >>> 16)) & mask;
+        return (bucket << 33) | ((long) group << 32) | order;
+    }
+
+    // Helper method - returns the table capacity a java.util.HashSet ends up with when it is
+    //      created from a collection of 'initial' elements and then grown to 'size' elements
+    private static int unionCapacity(int initial, int size) {
+        int capacity = Integer.highestOneBit(Math.max((int) (initial / .75f) + 1, 16) - 1) << 1;
+        while (size > capacity / 4 * 3) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // This interface is an action taken for each distinct word of a TextBlock
+    public interface WordAction {
+        // Takes the action for the word with the given Vocabulary ID, which appeared 'count'
+        //      times and first appeared in position 'rank' among the distinct words
+        void accept(int id, int count, int rank);
     }
 }
@@ -0,0 +1,82 @@
+// This class represents a cursor over the whitespace-separated tokens of a piece of text.
+//      Tokens are exactly the ones a java.util.Scanner with its default delimiter would return,
+//      but they are found by scanning the characters directly. Each token is only described by
+//      its position and its String.hashCode(), so no substrings are created while tokenizing.
+public class Tokenizer {
+    private CharSequence text;
+    private int position;
+    private int start;
+    private int end;
+    private int hash;
+
+    // Constructs a new Tokenizer positioned before the first token of the given text
+    // 'text' should be non-null.
+    public Tokenizer(CharSequence text) {
+        reset(text);
+    }
+
+    // Moves this Tokenizer back before the first token of the given text, so it can be reused
+    // 'text' should be non-null.
+    public void reset(CharSequence text) {
+        this.text = text;
+        this.position = 0;
+        this.start = 0;
+        this.end = 0;
+        this.hash = 0;
+    }
+
+    // Advances to the next token. Returns true if there was one, false if the end of the text
+    //      has been reached.
+    public boolean next() {
+        int length = text.length();
+        int i = position;
+        while (i < length && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            position = length;
+            return false;
+        }
+        start = i;
+        int h = 0;
+        char c;
+        while (i < length && !Character.isWhitespace(c = text.charAt(i))) {
+            h = 31 * h + c;
+            i++;
+        }
+        end = i;
+        hash = h;
+        position = i;
+        return true;
+    }
+
+    // Returns the index of the first character of the current token
+    public int start() {
+        return start;
+    }
+
+    // Returns the index right after the last character of the current token
+    public int end() {
+        return end;
+    }
+
+    // Returns the String.hashCode() of the current token
+    public int hash() {
+        return hash;
+    }
+
+    // Returns the Vocabulary ID of the current token, or -1 if it has never been interned
+    public int id() {
+        return Vocabulary.id(text, start, end, hash);
+    }
+
+    // Returns the Vocabulary ID of the current token, interning it first if needed
+    public int intern() {
+        return Vocabulary.intern(text, start, end, hash);
+    }
+
+    // Returns the current token as a String
+    public String token() {
+        return text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,390 @@
+import java.util.*;
+import java.io.*;
+import java.lang.invoke.*;
+
+// This class turns the nodes of a CompiledTree into bytecode, so the JIT sees every decision as a
+//      constant comparison instead of a walk over arrays. Each decision node becomes
+//
+//          if (input.get(ID) < THRESHOLD) { left subtree } else { right subtree }
+//
+//      and each label node a return of the label's index, in a hidden class that implements
+//      Walker. One version of the code reads a TextBlock, the other the feature counts gathered
+//      by CompiledTree.classify(CharSequence); both compute each probability exactly like the
+//      interpreted walk, so they always reach the same leaf.
+// HotSpot never compiles methods over 8000 bytes of bytecode, so subtrees that would make a
+//      method larger than that become methods of their own. Trees needing more than a class can
+//      hold (65535 constants or methods) aren't generated at all.
+public class TreeGenerator {
+    // Subtrees larger than this many bytes of code are split off into their own method, which
+    //      keeps every method well below HotSpot's limit of 8000 bytes
+    private static final int SUBTREE_LIMIT = 3000;
+    private static final int CLASS_LIMIT = 0xFFFF;
+
+    // Bytes of code for one node or call, for each kind of input
+    private static final int BLOCK_TEST = 14;
+    private static final int COUNTS_TEST = 15;
+    private static final int LEAF_CODE = 4;
+    private static final int BLOCK_CALL = 5;
+    private static final int COUNTS_CALL = 6;
+
+    private static final String CLASS_NAME = "GeneratedTree";
+    private static final String BLOCK_DESCRIPTOR = "(LTextBlock;)I";
+    private static final String COUNTS_DESCRIPTOR = "([ID)I";
+
+    // This interface is implemented by every generated tree. Both methods return the index of
+    //      the label the tree predicts.
+    public interface Walker {
+        // Returns the label index predicted for the given TextBlock
+        int leaf(TextBlock input);
+
+        // Returns the label index predicted for a text with the given number of occurrences of
+        //      each feature and the given total number of words, which should not be 0
+        int leaf(int[] counts, double totalWords);
+    }
+
+    private final int[] feature;
+    private final double[] threshold;
+    private final int[] next;
+    private final int[] featureIds;
+    private final ConstantPool pool;
+    private final ByteArrayOutputStream methods;
+    private int methodCount;
+
+    private TreeGenerator(int[] feature, double[] threshold, int[] next, int[] featureIds) {
+        this.feature = feature;
+        this.threshold = threshold;
+        this.next = next;
+        this.featureIds = featureIds;
+        this.pool = new ConstantPool();
+        this.methods = new ByteArrayOutputStream();
+    }
+
+    // Returns a Walker for the tree with the given preorder node arrays, laid out as described in
+    //      CompiledTree, whose features have the given Vocabulary IDs. Returns null if the tree
+    //      is empty or too large to generate.
+    // None of the arrays should be null.
+    public static Walker generate(int[] feature, double[] threshold, int[] next, int[] featureIds) {
+        if (feature.length == 0) {
+            return null;
+        }
+        try {
+            byte[] bytes = new TreeGenerator(feature, threshold, next, featureIds).toClassFile();
+            if (bytes == null) {
+                return null;
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Walker) lookup.findConstructor(lookup.lookupClass(),
+                                                   MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Generated tree can't be loaded", e);
+        }
+    }
+
+    // Helper method - returns the bytes of the generated class, or null if it would exceed the
+    //      limits of a class file
+    private byte[] toClassFile() throws IOException {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int walker = pool.classRef("TreeGenerator$Walker");
+
+        Code constructor = new Code();
+        constructor.op(0x2A);                                                   // aload_0
+        constructor.op(0xB7).u2(pool.methodRef("java/lang/Object", "<init>", "()V"));
+        constructor.op(0xB1);                                                   // return
+        writeMethod(0x0001, "<init>", "()V", 1, 1, constructor.toByteArray(), new int[0]);
+        writeTree(false);
+        writeTree(true);
+        if (pool.size() > CLASS_LIMIT || methodCount > CLASS_LIMIT) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(61);                     // Java 17
+        pool.writeTo(out);
+        out.writeShort(0x0031);                 // public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(walker);
+        out.writeShort(0);                      // fields
+        out.writeShort(methodCount);
+        methods.writeTo(out);
+        out.writeShort(0);                      // attributes
+        return bytes.toByteArray();
+    }
+
+    // Helper method - writes every method of one version of the tree: the Walker method for the
+    //      root, and a static method for every subtree split off from it
+    private void writeTree(boolean counts) throws IOException {
+        int[] size = subtreeSizes(counts);
+        Map<Integer, Integer> methodRefs = new HashMap<>();
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int root = pending.poll();
+            boolean isStatic = root != 0;
+            int base = isStatic ? 0 : 1;
+            Code code = new Code();
+            // Node indexes to emit, and ~offset of each branch to point at the current position
+            Deque<Integer> work = new ArrayDeque<>();
+            work.push(root);
+            while (!work.isEmpty()) {
+                int i = work.pop();
+                if (i < 0) {
+                    code.patch(~i);
+                    continue;
+                }
+                if (i != root && size[i] > SUBTREE_LIMIT) {
+                    Integer ref = methodRefs.get(i);
+                    if (ref == null) {
+                        ref = pool.methodRef(CLASS_NAME, methodName(counts, i),
+                                             counts ? COUNTS_DESCRIPTOR : BLOCK_DESCRIPTOR);
+                        methodRefs.put(i, ref);
+                        pending.add(i);
+                    }
+                    code.load(0x19, base);              // aload
+                    if (counts) {
+                        code.load(0x18, base + 1);      // dload
+                    }
+                    code.op(0xB8).u2(ref);              // invokestatic
+                    code.op(0xAC);                      // ireturn
+                } else if (feature[i] == CompiledTree.LEAF) {
+                    code.op(0x13).u2(pool.integer(next[i]));    // ldc_w
+                    code.op(0xAC);
+                } else {
+                    code.load(0x19, base);
+                    if (counts) {
+                        code.op(0x13).u2(pool.integer(feature[i]));
+                        code.op(0x2E);                  // iaload
+                        code.op(0x87);                  // i2d
+                        code.load(0x18, base + 1);
+                        code.op(0x6F);                  // ddiv
+                    } else {
+                        code.op(0x13).u2(pool.integer(featureIds[feature[i]]));
+                        code.op(0xB6).u2(pool.methodRef("TextBlock", "get", "(I)D"));
+                    }
+                    code.op(0x14).u2(pool.doubleValue(threshold[i]));    // ldc2_w
+                    code.op(0x98);                      // dcmpg
+                    int branch = code.length();
+                    code.op(0x9C).u2(0);                // ifge, patched to the right child
+                    work.push(next[i]);
+                    work.push(~branch);
+                    work.push(i + 1);
+                }
+            }
+            int locals = base + (counts ? 3 : 1);
+            writeMethod(isStatic ? 0x000A : 0x0001,     // private static, or public
+                        isStatic ? methodName(counts, root) : "leaf",
+                        counts ? COUNTS_DESCRIPTOR : BLOCK_DESCRIPTOR, 4, locals,
+                        code.toByteArray(), code.frames());
+        }
+    }
+
+    // Helper method - returns the bytes of code each subtree would take if nothing in it were
+    //      split off. Every node comes before the nodes of its subtree, so a backward pass sees
+    //      the children of each decision node before the node itself.
+    private int[] subtreeSizes(boolean counts) {
+        int[] size = new int[feature.length];
+        int call = counts ? COUNTS_CALL : BLOCK_CALL;
+        for (int i = feature.length - 1; i >= 0; i--) {
+            if (feature[i] == CompiledTree.LEAF) {
+                size[i] = LEAF_CODE;
+            } else {
+                int left = size[i + 1] > SUBTREE_LIMIT ? call : size[i + 1];
+                int right = size[next[i]] > SUBTREE_LIMIT ? call : size[next[i]];
+                size[i] = (counts ? COUNTS_TEST : BLOCK_TEST) + left + right;
+            }
+        }
+        return size;
+    }
+
+    // Helper method - writes a method with the given code and stack map frames (offsets of
+    //      branch targets, where the frame is always the same as on entry)
+    private void writeMethod(int access, String name, String descriptor, int maxStack,
+                             int maxLocals, byte[] code, int[] frames) throws IOException {
+        DataOutputStream out = new DataOutputStream(methods);
+        out.writeShort(access);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream frameOut = new DataOutputStream(table);
+        int previous = -1;
+        for (int offset : frames) {
+            int delta = offset - previous - 1;
+            if (delta < 64) {
+                frameOut.writeByte(delta);              // same_frame
+            } else {
+                frameOut.writeByte(251);                // same_frame_extended
+                frameOut.writeShort(delta);
+            }
+            previous = offset;
+        }
+        int attributes = frames.length > 0 ? 8 + table.size() : 0;
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(12 + code.length + attributes);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);                              // exception table
+        if (frames.length > 0) {
+            out.writeShort(1);
+            out.writeShort(pool.utf8("StackMapTable"));
+            out.writeInt(2 + table.size());
+            out.writeShort(frames.length);
+            table.writeTo(out);
+        } else {
+            out.writeShort(0);
+        }
+        methodCount++;
+    }
+
+    private static String methodName(boolean counts, int node) {
+        return (counts ? "c" : "t") + node;
+    }
+
+    // This class is the bytecode of one method being written, along with the offsets of its
+    //      branch targets
+    private static class Code {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int[] frames = new int[16];
+        private int frameCount;
+
+        private Code op(int opcode) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) opcode;
+            return this;
+        }
+
+        private Code u2(int value) {
+            return op(value >> 8).op(value);
+        }
+
+        // Loads a local variable; 'opcode' is the general form, e.g. aload (0x19)
+        private void load(int opcode, int slot) {
+            // The short forms of each load (aload_0 and so on) follow each other from here
+            int first = opcode == 0x19 ? 0x2A : 0x26;
+            op(first + slot);
+        }
+
+        // Points the branch instruction at 'offset' to the current position
+        private void patch(int offset) {
+            int jump = length - offset;
+            bytes[offset + 1] = (byte) (jump >> 8);
+            bytes[offset + 2] = (byte) jump;
+            if (frameCount == frames.length) {
+                frames = Arrays.copyOf(frames, frameCount * 2);
+            }
+            frames[frameCount++] = length;
+        }
+
+        private int length() {
+            return length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private int[] frames() {
+            return Arrays.copyOf(frames, frameCount);
+        }
+    }
+
+    // This class is the constant pool of the generated class. Equal constants are only added
+    //      once.
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        // Index of the next entry; entries are numbered from 1, and doubles take two
+        private int count = 1;
+
+        private int utf8(String value) {
+            return add("Utf8 " + value, () -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            }, 1);
+        }
+
+        private int integer(int value) {
+            return add(value, () -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            }, 1);
+        }
+
+        // Doubles are keyed by their bits, so 0.0 and -0.0 stay apart
+        private int doubleValue(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            return add(bits, () -> {
+                out.writeByte(6);
+                out.writeLong(bits);
+            }, 2);
+        }
+
+        private int classRef(String name) {
+            int nameIndex = utf8(name);
+            return add("Class " + name, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            }, 1);
+        }
+
+        private int methodRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = add("NameAndType " + name + descriptor, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            }, 1);
+            return add("Methodref " + owner + "." + name + descriptor, () -> {
+                out.writeByte(10);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            }, 1);
+        }
+
+        // Returns the number of entries, counting the unused entry 0
+        private int size() {
+            return count;
+        }
+
+        private void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+        // Helper method - returns the index of the given constant, writing it with 'writer' if
+        //      it's new
+        private int add(Object key, Entry writer, int slots) {
+            Integer index = indexes.get(key);
+            if (index == null) {
+                index = count;
+                try {
+                    writer.write();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                indexes.put(key, index);
+                count += slots;
+            }
+            return index;
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.*;
+import java.util.stream.*;
+import java.io.*;
+
+// Checks that trees running as generated code (see TreeGenerator) predict exactly the same labels
+//      as the interpreted walk over their arrays, for both TextBlocks and raw text. Every tree is
+//      compiled twice from the same arrays, and only one of the two copies is generated, so the
+//      other keeps walking the arrays. The trees checked are:
+//          - a model trained on the training file, through Classifier.classify, on the test file
+//          - random trees, on random texts whose word probabilities often equal the thresholds
+//          - chains as deep as the number of nodes, leaning left and right, which split into
+//            many methods
+//          - random trees over the size at which subtrees become methods of their own
+//          - a tree with more features than a class file can hold, which must not be generated
+//            and must keep classifying by walking the arrays
+// The run fails, with exit status 1, if any label differs or a tree is generated (or not)
+//      unexpectedly.
+public class TreeGeneratorCheck {
+    public static final long DEFAULT_SEED = 0;
+
+    // Number of random texts each synthetic tree is checked on
+    private static final int TEXTS = 2000;
+    // Word probabilities of random texts are multiples of 1 / length for short lengths, so many
+    //      thresholds are picked from those values to test the < comparison at equality
+    private static final int MAX_TEXT_LENGTH = 12;
+    // Ways the synthetic trees are split into their left and right subtrees
+    private static final int RANDOM = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+
+    private int checked;
+    private int mismatches;
+    private final List<String> failures = new ArrayList<>();
+
+    // Arguments: [training file] [test file] [seed], defaulting to Client.TRAIN_FILE,
+    //      Client.TEST_FILE and DEFAULT_SEED.
+    // Throws a FileNotFoundException
+    //      If a data file doesn't exist
+    public static void main(String[] args) throws FileNotFoundException {
+        String trainFile = args.length > 0 ? args[0] : Client.TRAIN_FILE;
+        String testFile = args.length > 1 ? args[1] : Client.TEST_FILE;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        if (Metrics.ENABLED) {
+            System.out.println("Generated code is off while metrics are enabled");
+            System.exit(1);
+        }
+
+        TreeGeneratorCheck check = new TreeGeneratorCheck();
+        check.trained(trainFile, testFile);
+
+        Random random = new Random(seed);
+        for (int t = 0; t < 200; t++) {
+            int leaves = 1 + random.nextInt(t < 100 ? 16 : 400);
+            check.synthetic("random tree " + t, random, leaves, 1 + random.nextInt(40), true,
+                            RANDOM);
+        }
+        check.synthetic("left-leaning chain", random, 20_000, 50, true, LEFT);
+        check.synthetic("right-leaning chain", random, 20_000, 50, true, RIGHT);
+        for (int t = 0; t < 5; t++) {
+            // Over SUBTREE_LIMIT bytes in total, so subtrees become methods of their own
+            check.synthetic("large random tree " + t, random, 3_000 + random.nextInt(20_000),
+                            300, true, RANDOM);
+        }
+        check.synthetic("tree over the class file limits", random, 70_000, 70_000, false,
+                        RANDOM);
+
+        System.out.println(check);
+        if (check.mismatches > 0 || !check.failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    // Helper method - checks a model trained on the training file on every text of the test
+    //      file, comparing the labels Classifier.classify gives before and after generate()
+    private void trained(String trainFile, String testFile) throws FileNotFoundException {
+        DataLoader train = new DataLoader(trainFile, Client.LABEL_INDEX, Client.CONTENT_INDEX,
+                                          DEFAULT_SEED, 1);
+        Classifier c = new Classifier(train.getData(), train.getLabels());
+        c.freeze();
+        List<String> texts;
+        try (Stream<List<String>> rows = CsvReader.stream(testFile)) {
+            texts = rows.map(row -> row.get(Client.CONTENT_INDEX)).collect(Collectors.toList());
+        }
+        List<TextBlock> blocks = texts.stream().map(TextBlock::new).collect(Collectors.toList());
+        String[] walked = new String[texts.size()];
+        String[] walkedText = new String[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            walked[i] = c.classify(blocks.get(i));
+            walkedText[i] = c.classify((CharSequence) texts.get(i));
+        }
+        expect("trained model", c.generate(), true);
+        for (int i = 0; i < texts.size(); i++) {
+            compare("trained model", "test row " + i, walked[i], c.classify(blocks.get(i)));
+            compare("trained model", "test row " + i + " (raw text)", walkedText[i],
+                    c.classify((CharSequence) texts.get(i)));
+        }
+    }
+
+    // Helper method - checks a tree with the given number of leaves over the given number of
+    //      features, split as given, on random texts over the same words
+    private void synthetic(String name, Random random, int leaves, int featureCount,
+                           boolean generates, int split) {
+        String[] features = new String[featureCount];
+        for (int f = 0; f < featureCount; f++) {
+            features[f] = "gen" + f;
+        }
+        String[] labels = {"ham", "spam", "other"};
+        int nodes = 2 * leaves - 1;
+        int[] feature = new int[nodes];
+        double[] threshold = new double[nodes];
+        int[] next = new int[nodes];
+        build(random, leaves, split, features.length, labels.length, feature, threshold, next);
+
+        CompiledTree walked = new CompiledTree(features, labels, feature, threshold, next);
+        CompiledTree generated = new CompiledTree(features, labels, feature, threshold, next);
+        expect(name, generated.generate(), generates);
+
+        // Texts mostly use a few words, so the features they hold are tested often
+        int common = Math.min(featureCount, 8);
+        for (int t = 0; t < TEXTS; t++) {
+            int length = t % 50 == 0 ? 0 : 1 + random.nextInt(MAX_TEXT_LENGTH);
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < length; w++) {
+                int f = random.nextInt(4) == 0 ? random.nextInt(featureCount)
+                                               : random.nextInt(common);
+                text.append(random.nextInt(10) == 0 ? "unseen" : features[f]).append(' ');
+            }
+            String raw = text.toString();
+            TextBlock block = new TextBlock(raw);
+            compare(name, "\"" + raw + "\"", walked.classify(block), generated.classify(block));
+            compare(name, "\"" + raw + "\" (raw text)", walked.classify(raw),
+                    generated.classify(raw));
+        }
+    }
+
+    // Helper method - fills the node arrays with a preorder tree of the given number of leaves,
+    //      without recursion since chains are as deep as they are long
+    private static void build(Random random, int leaves, int split, int featureCount,
+                              int labelCount, int[] feature, double[] threshold, int[] next) {
+        // Leaves still to place for each subtree, or ~i to set the right child of node i
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(leaves);
+        int size = 0;
+        while (!stack.isEmpty()) {
+            int top = stack.pop();
+            if (top < 0) {
+                next[~top] = size;
+            } else if (top == 1) {
+                feature[size] = CompiledTree.LEAF;
+                next[size++] = random.nextInt(labelCount);
+            } else {
+                int left = split == LEFT ? top - 1
+                         : split == RIGHT ? 1
+                         : 1 + random.nextInt(top - 1);
+                feature[size] = random.nextInt(featureCount);
+                threshold[size] = threshold(random);
+                stack.push(top - left);
+                stack.push(~size);
+                stack.push(left);
+                size++;
+            }
+        }
+    }
+
+    // Helper method - returns a threshold, often exactly a probability a random text can have
+    private static double threshold(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return 0;
+            case 1:
+                return random.nextDouble();
+            default:
+                int length = 1 + random.nextInt(MAX_TEXT_LENGTH);
+                return random.nextInt(length + 1) / (double) length;
+        }
+    }
+
+    // Helper method - records a failure if a tree was generated when it shouldn't have been, or
+    //      the other way around
+    private void expect(String name, boolean generated, boolean expected) {
+        if (generated != expected) {
+            failures.add(name + (expected ? " wasn't generated" : " was generated"));
+        }
+    }
+
+    // Helper method - records a mismatch if the generated label isn't the walked one
+    private void compare(String name, String input, String walked, String generated) {
+        checked++;
+        if (!walked.equals(generated)) {
+            mismatches++;
+            if (failures.size() < 10) {
+                failures.add(name + ": " + input + " walked to " + walked + ", generated code gave "
+                             + generated);
+            }
+        }
+    }
+
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(checked).append(" labels compared, ").append(mismatches)
+              .append(" mismatches").append(System.lineSeparator());
+        for (String failure : failures) {
+            result.append("    ").append(failure).append(System.lineSeparator());
+        }
+        result.append(mismatches == 0 && failures.isEmpty() ? "PASSED" : "FAILED");
+        return result.toString();
+    }
+}
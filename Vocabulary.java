@@ -0,0 +1,164 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+// This class represents the global vocabulary shared by every TextBlock. Each distinct word is
+//      interned once and given a small int ID, so documents only have to store primitive IDs
+//      and counts instead of their own copies of every word.
+// Looking up a word never blocks; only interning a word that hasn't been seen before does.
+public class Vocabulary {
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private static final Object LOCK = new Object();
+    private static volatile Table table = new Table(INITIAL_CAPACITY, INITIAL_CAPACITY / 2);
+
+    // Returns the ID of the given word, or -1 if the word is null or has never been interned.
+    public static int id(String word) {
+        if (word == null) {
+            return -1;
+        }
+        return find(table, word, 0, word.length(), word.hashCode());
+    }
+
+    // Returns the ID of the word made of the characters of 'text' from 'start' (inclusive) to
+    //      'end' (exclusive), or -1 if that word has never been interned. 'hash' must be the
+    //      String.hashCode() of the word, so no substring has to be created to look it up.
+    // 'text' should be non-null.
+    public static int id(CharSequence text, int start, int end, int hash) {
+        return find(table, text, start, end, hash);
+    }
+
+    // Returns the ID of the given word, interning it first if it hasn't been seen before.
+    // 'word' should be non-null.
+    public static int intern(String word) {
+        return intern(word, 0, word.length(), word.hashCode());
+    }
+
+    // Returns the ID of the word made of the characters of 'text' from 'start' (inclusive) to
+    //      'end' (exclusive), interning it first if it hasn't been seen before. 'hash' must be
+    //      the String.hashCode() of the word. A String is only created for new words.
+    // 'text' should be non-null.
+    public static int intern(CharSequence text, int start, int end, int hash) {
+        int id = find(table, text, start, end, hash);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (LOCK) {
+            Table t = table;
+            id = find(t, text, start, end, hash);
+            if (id < 0) {
+                id = insert(t, text.subSequence(start, end).toString(), hash);
+            }
+            return id;
+        }
+    }
+
+    // Returns the word with the given ID.
+    // 'id' should be an ID previously returned by this Vocabulary.
+    public static String word(int id) {
+        return table.words[id];
+    }
+
+    // Returns the String.hashCode() of the word with the given ID.
+    // 'id' should be an ID previously returned by this Vocabulary.
+    public static int hash(int id) {
+        return table.hashes[id];
+    }
+
+    // Returns the number of distinct words interned so far
+    public static int size() {
+        return table.size;
+    }
+
+    // Helper method - returns the ID of the word in 'text' from 'start' to 'end' within the given
+    //      table, or -1 if it isn't in the table
+    private static int find(Table t, CharSequence text, int start, int end, int hash) {
+        int mask = t.slots.length() - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            int slot = t.slots.getAcquire(i);
+            if (slot == 0) {
+                return -1;
+            }
+            int id = slot - 1;
+            if (t.hashes[id] == hash && matches(t.words[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    // Helper method - returns true if 'word' is made of exactly the characters of 'text' from
+    //      'start' to 'end'
+    private static boolean matches(String word, CharSequence text, int start, int end) {
+        int length = end - start;
+        if (word.length() != length) {
+            return false;
+        }
+        if (text instanceof String) {
+            return word.regionMatches(0, (String) text, start, length);
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Helper method - adds the given word to the vocabulary, growing the table first if needed,
+    //      and returns its new ID. Must be called while holding LOCK.
+    private static int insert(Table t, String word, int hash) {
+        int id = t.size;
+        if (id == t.words.length || 2 * (id + 1) > t.slots.length()) {
+            t = t.grow();
+        }
+        t.words[id] = word;
+        t.hashes[id] = hash;
+        int mask = t.slots.length() - 1;
+        int i = spread(hash) & mask;
+        while (t.slots.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        t.size = id + 1;
+        t.slots.setRelease(i, id + 1);
+        table = t;
+        return id;
+    }
+
+    // Helper method - mixes the high bits of the given hash into the low bits used to pick a slot
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // This class holds one generation of the vocabulary's open-addressing hash table. Slots
+    //      store (ID + 1) so that 0 can mark an empty slot; words and hashes are indexed by ID.
+    private static class Table {
+        private final AtomicIntegerArray slots;
+        private final String[] words;
+        private final int[] hashes;
+        private volatile int size;
+
+        // Constructs a new empty Table with the given number of slots and room for the given
+        //      number of words
+        private Table(int slotCount, int wordCapacity) {
+            this.slots = new AtomicIntegerArray(slotCount);
+            this.words = new String[wordCapacity];
+            this.hashes = new int[wordCapacity];
+        }
+
+        // Returns a copy of this Table with twice as many slots and room for twice as many words
+        private Table grow() {
+            Table bigger = new Table(slots.length() * 2, words.length * 2);
+            System.arraycopy(words, 0, bigger.words, 0, size);
+            System.arraycopy(hashes, 0, bigger.hashes, 0, size);
+            int mask = bigger.slots.length() - 1;
+            for (int id = 0; id < size; id++) {
+                int i = spread(hashes[id]) & mask;
+                while (bigger.slots.get(i) != 0) {
+                    i = (i + 1) & mask;
+                }
+                bigger.slots.set(i, id + 1);
+            }
+            bigger.size = size;
+            return bigger;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.util.*;
+import jdk.incubator.vector.*;
+
+// This class is a training backend that finds the word whose probability differs the most
+//      between two TextBlocks, picking exactly the word TextBlock.findBiggestDifference picks,
+//      ties included. It takes a bounded "hot" vocabulary from a corpus, the words found in the
+//      most documents, and projects every TextBlock onto a dense vector of the probabilities of
+//      those words. For hot words the search then compares whole SIMD vectors of lanes at a time
+//      (jdk.incubator.vector); the rest of each TextBlock's words stay sparse and are merged the
+//      same way as by findBiggestDifference.
+// Projections are cached for as long as their TextBlock is reachable, since training compares
+//      the TextBlock of a leaf again every time a conflicting datapoint reaches it. Each one
+//      takes 8 bytes per hot word (rounded up to a whole vector) plus 12 per other word.
+// A DenseKernel is not safe to use from several threads at once. The JVM has to be started with
+//      --add-modules jdk.incubator.vector for this class to load.
+// This class is experimental: it hasn't been shown to train faster than the sparse merge, so it
+//      is only built with the benchmarks, which pass it to Classifier as its SplitFinder.
+public class DenseKernel implements Classifier.SplitFinder {
+    public static final int DEFAULT_HOT_WORDS = 512;
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // Vocabulary ID of the hot word in each lane, and the lane of each Vocabulary ID below the
+    //      length of 'lanes' (-1 for words that aren't hot)
+    private final int[] hotIds;
+    private final int[] lanes;
+    private final int width;
+    private final Map<TextBlock, Projection> projections;
+    // Words tied for the biggest difference during the current search
+    private int[] candidates;
+
+    // Constructs a new DenseKernel whose hot vocabulary is the given number of words found in
+    //      the most TextBlocks of the given corpus (or every word, if there are fewer). Words in
+    //      the same number of TextBlocks are taken in the order they were first interned.
+    // Throws an IllegalArgumentException
+    //      If the corpus is null or contains null, or hotWords is negative
+    public DenseKernel(List<TextBlock> corpus, int hotWords) {
+        if (corpus == null || corpus.contains(null) || hotWords < 0) {
+            throw new IllegalArgumentException();
+        }
+        int[] frequency = new int[Vocabulary.size()];
+        for (TextBlock block : corpus) {
+            block.forEachWord((id, count, rank) -> frequency[id]++);
+        }
+        // Every word in more TextBlocks than 'cutoff' is hot, and so are as many of those in
+        //      exactly 'cutoff' TextBlocks (the first interned first) as there is room for
+        int[] withFrequency = new int[corpus.size() + 1];
+        for (int f : frequency) {
+            withFrequency[f]++;
+        }
+        int cutoff = corpus.size();
+        int above = 0;
+        while (cutoff > 0 && above + withFrequency[cutoff] < hotWords) {
+            above += withFrequency[cutoff--];
+        }
+        this.hotIds = new int[cutoff == 0 ? above : hotWords];
+        this.lanes = new int[frequency.length];
+        Arrays.fill(lanes, -1);
+        int room = hotIds.length - above;
+        int lane = 0;
+        for (int id = 0; id < frequency.length; id++) {
+            boolean hot = frequency[id] > cutoff;
+            if (frequency[id] == cutoff && room > 0) {
+                hot = true;
+                room--;
+            }
+            if (hot) {
+                hotIds[lane] = id;
+                lanes[id] = lane++;
+            }
+        }
+        this.width = (hotIds.length + SPECIES.length() - 1) / SPECIES.length() * SPECIES.length();
+        this.projections = new WeakHashMap<>();
+        this.candidates = new int[16];
+    }
+
+    // Returns the number of hot words, which are compared as dense vectors
+    public int hotWords() {
+        return hotIds.length;
+    }
+
+    // Returns the word with the biggest difference in probability between the two TextBlocks,
+    //      exactly as one.findBiggestDifference(other) does: null if there is none, and the same
+    //      word whenever several words share the biggest difference.
+    // Throws an IllegalArgumentException
+    //      If either TextBlock is null
+    public String findBiggestDifference(TextBlock one, TextBlock other) {
+        if (one == null || other == null) {
+            throw new IllegalArgumentException();
+        }
+        Projection a = project(one);
+        Projection b = project(other);
+        if (candidates.length < a.words + b.words) {
+            candidates = new int[Math.max(a.words + b.words, 2 * candidates.length)];
+        }
+
+        double hotHighest = biggestDifference(a.hot, b.hot);
+
+        // Other words: merged in ascending order of their IDs, keeping every word tied for the
+        //      biggest difference so far, and counting the words in both
+        int common = 0;
+        double highest = 0;
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.coldIds.length || j < b.coldIds.length) {
+            int word;
+            double diff;
+            if (j == b.coldIds.length || (i < a.coldIds.length && a.coldIds[i] < b.coldIds[j])) {
+                word = a.coldIds[i];
+                diff = a.cold[i++];
+            } else if (i == a.coldIds.length || a.coldIds[i] > b.coldIds[j]) {
+                word = b.coldIds[j];
+                diff = 0 - b.cold[j++];
+            } else {
+                word = a.coldIds[i];
+                diff = a.cold[i++] - b.cold[j++];
+                common++;
+            }
+            diff = Math.abs(diff);
+            if (diff >= highest && diff > 0) {
+                if (diff > highest) {
+                    highest = diff;
+                    count = 0;
+                }
+                candidates[count++] = word;
+            }
+        }
+
+        if (hotHighest > highest) {
+            highest = hotHighest;
+            count = 0;
+        }
+        if (highest == 0) {
+            return null;
+        }
+        if (hotHighest == highest) {
+            count = addTied(a.hot, b.hot, highest, count);
+        }
+
+        int bestWord = candidates[0];
+        if (count > 1) {
+            // Ties are broken by the number of distinct words in either TextBlock
+            int union = a.words + b.words - common - countCommon(a.hot, b.hot);
+            long bestKey = one.tieBreakKey(other, bestWord, union);
+            for (int k = 1; k < count; k++) {
+                long key = one.tieBreakKey(other, candidates[k], union);
+                if (key < bestKey) {
+                    bestWord = candidates[k];
+                    bestKey = key;
+                }
+            }
+        }
+        return Vocabulary.word(bestWord);
+    }
+
+    // Helper method - returns the biggest absolute difference between the lanes of two
+    //      projections. The vector loops are kept in small methods of their own, so the JIT
+    //      inlines all of the Vector API calls in them and keeps the vectors in registers.
+    private static double biggestDifference(double[] one, double[] other) {
+        DoubleVector biggest = DoubleVector.zero(SPECIES);
+        for (int i = 0; i < one.length; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, one, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, other, i);
+            biggest = biggest.max(x.sub(y).abs());
+        }
+        return biggest.reduceLanes(VectorOperators.MAX);
+    }
+
+    // Helper method - adds the hot word of every lane whose absolute difference between two
+    //      projections is 'difference' to 'candidates' after the first 'count', and returns
+    //      the new count. Only vectors holding a tied lane are looked at lane by lane.
+    private int addTied(double[] one, double[] other, double difference, int count) {
+        DoubleVector target = DoubleVector.broadcast(SPECIES, difference);
+        for (int i = 0; i < one.length; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, one, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, other, i);
+            if (x.sub(y).abs().compare(VectorOperators.EQ, target).anyTrue()) {
+                for (int lane = i; lane < i + SPECIES.length(); lane++) {
+                    if (Math.abs(one[lane] - other[lane]) == difference) {
+                        candidates[count++] = hotIds[lane];
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // Helper method - returns the number of lanes where both projections are above 0
+    private static int countCommon(double[] one, double[] other) {
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        int common = 0;
+        for (int i = 0; i < one.length; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, one, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, other, i);
+            common += x.compare(VectorOperators.GT, zero)
+                       .and(y.compare(VectorOperators.GT, zero)).trueCount();
+        }
+        return common;
+    }
+
+    // Helper method - returns the projection of the given TextBlock, making it if it isn't
+    //      cached yet
+    private Projection project(TextBlock block) {
+        Projection projection = projections.get(block);
+        if (projection == null) {
+            projection = new Projection(block.onHeap());
+            projections.put(block, projection);
+        }
+        return projection;
+    }
+
+    // This class is a TextBlock projected onto the hot vocabulary: the probability of every hot
+    //      word by lane, and the IDs (ascending) and probabilities of its other words
+    private class Projection {
+        private final double[] hot;
+        private final int[] coldIds;
+        private final double[] cold;
+        private final int words;
+
+        private Projection(TextBlock block) {
+            double total = block.wordCount();
+            this.words = block.getFeatures().size();
+            this.hot = new double[width];
+            int[] ids = new int[words];
+            double[] probabilities = new double[words];
+            int[] size = new int[1];
+            block.forEachWord((id, count, rank) -> {
+                int lane = id < lanes.length ? lanes[id] : -1;
+                if (lane >= 0) {
+                    hot[lane] = count / total;
+                } else {
+                    ids[size[0]] = id;
+                    probabilities[size[0]++] = count / total;
+                }
+            });
+            this.coldIds = Arrays.copyOf(ids, size[0]);
+            this.cold = Arrays.copyOf(probabilities, size[0]);
+        }
+    }
+}
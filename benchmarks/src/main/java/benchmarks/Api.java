@@ -0,0 +1,134 @@
+package benchmarks;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Handles to the classifier's API. The classifier lives in the default package, which code in
+ * a named package (as JMH requires) can't refer to by name, so its classes are looked up once
+ * here and their members exposed as constant {@link MethodHandle}s. Every handle has all of its
+ * reference types erased to {@code Object}; calls through {@code invokeExact} on these
+ * {@code static final} handles are inlined by the JIT like direct calls.
+ */
+final class Api {
+    static final Class<?> TEXT_BLOCK = load("TextBlock");
+    static final Class<?> CLASSIFIER = load("Classifier");
+    static final Class<?> CSV_READER = load("CsvReader");
+    static final Class<?> MODEL_REGISTRY = load("ModelRegistry");
+    static final Class<?> CLASSIFICATION_CACHE = load("ClassificationCache");
+
+    /** {@code new TextBlock(String)} */
+    static final MethodHandle NEW_TEXT_BLOCK = constructor(TEXT_BLOCK, String.class);
+    /** {@code TextBlock.findBiggestDifference(TextBlock)} */
+    static final MethodHandle FIND_BIGGEST_DIFFERENCE =
+            virtual(TEXT_BLOCK, "findBiggestDifference", String.class, TEXT_BLOCK);
+
+    /** {@code new Classifier(List<TextBlock>, List<String>)} */
+    static final MethodHandle TRAIN = constructor(CLASSIFIER, List.class, List.class);
+    /** {@code new Classifier(Scanner)} */
+    static final MethodHandle LOAD_TEXT = constructor(CLASSIFIER, Scanner.class);
+    /** {@code Classifier.loadBinary(String)} */
+    static final MethodHandle LOAD_BINARY = staticMethod(CLASSIFIER, "loadBinary", CLASSIFIER, String.class);
+    /** {@code Classifier.update(TextBlock, String)} */
+    static final MethodHandle UPDATE = virtual(CLASSIFIER, "update", void.class, TEXT_BLOCK, String.class);
+    /** {@code Classifier.classify(TextBlock)} */
+    static final MethodHandle CLASSIFY = virtual(CLASSIFIER, "classify", String.class, TEXT_BLOCK);
+    /** {@code Classifier.classify(CharSequence)} */
+    static final MethodHandle CLASSIFY_TEXT =
+            virtual(CLASSIFIER, "classify", String.class, CharSequence.class);
+    /** {@code Classifier.classifyAll(List<TextBlock>)} */
+    static final MethodHandle CLASSIFY_ALL = virtual(CLASSIFIER, "classifyAll", List.class, List.class);
+    /** {@code Classifier.generate()} */
+    static final MethodHandle GENERATE = virtual(CLASSIFIER, "generate", boolean.class);
+    /** {@code Classifier.save(PrintStream)} */
+    static final MethodHandle SAVE = virtual(CLASSIFIER, "save", void.class, PrintStream.class);
+    /** {@code Classifier.saveBinary(String)} */
+    static final MethodHandle SAVE_BINARY = virtual(CLASSIFIER, "saveBinary", void.class, String.class);
+
+    /** {@code new ModelRegistry(Classifier, String)} */
+    static final MethodHandle NEW_MODEL_REGISTRY = constructor(MODEL_REGISTRY, CLASSIFIER, String.class);
+    /** {@code ModelRegistry.classify(CharSequence)} */
+    static final MethodHandle REGISTRY_CLASSIFY_TEXT =
+            virtual(MODEL_REGISTRY, "classify", String.class, CharSequence.class);
+    /** {@code ModelRegistry.load(String)} */
+    static final MethodHandle REGISTRY_LOAD =
+            virtual(MODEL_REGISTRY, "load", load("ModelRegistry$Version"), String.class);
+
+    /** {@code new ClassificationCache(int)} */
+    static final MethodHandle NEW_CLASSIFICATION_CACHE = constructor(CLASSIFICATION_CACHE, int.class);
+    /** {@code ClassificationCache.classify(Classifier, CharSequence)} */
+    static final MethodHandle CACHE_CLASSIFY =
+            virtual(CLASSIFICATION_CACHE, "classify", String.class, CLASSIFIER, CharSequence.class);
+
+    /** {@code CsvReader.read(String)} */
+    static final MethodHandle CSV_READ = staticMethod(CSV_READER, "read", List.class, String.class);
+
+    private Api() {
+    }
+
+    /**
+     * Handles to the experimental Vector API training backend, which is built with the benchmarks
+     * rather than the classifier, kept apart from the others since {@code DenseKernel} only loads
+     * in JVMs started with {@code --add-modules jdk.incubator.vector}.
+     */
+    static final class Dense {
+        static final Class<?> DENSE_KERNEL = load("DenseKernel");
+
+        /** {@code new DenseKernel(List<TextBlock>, int)} */
+        static final MethodHandle NEW_DENSE_KERNEL = constructor(DENSE_KERNEL, List.class, int.class);
+        /** {@code DenseKernel.findBiggestDifference(TextBlock, TextBlock)} */
+        static final MethodHandle FIND_BIGGEST_DIFFERENCE =
+                virtual(DENSE_KERNEL, "findBiggestDifference", String.class, TEXT_BLOCK, TEXT_BLOCK);
+        /** {@code new Classifier(List<TextBlock>, List<String>, Classifier.SplitFinder)} */
+        static final MethodHandle TRAIN =
+                constructor(CLASSIFIER, List.class, List.class, load("Classifier$SplitFinder"));
+
+        private Dense() {
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            return erase(MethodHandles.publicLookup().findConstructor(owner,
+                    MethodType.methodType(void.class, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> result,
+                                        Class<?>... parameters) {
+        try {
+            return erase(MethodHandles.publicLookup().findVirtual(owner, name,
+                    MethodType.methodType(result, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> result,
+                                       Class<?>... parameters) {
+        try {
+            return erase(MethodHandles.publicLookup().findStatic(owner, name,
+                    MethodType.methodType(result, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle erase(MethodHandle handle) {
+        return handle.asType(handle.type().erase());
+    }
+}
@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classifying test.csv with a saved model, one document at a time and as a batch, with the tree
+ * either walked as arrays or run as generated bytecode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifyBenchmark {
+    @Param({"large.txt"})
+    public String model;
+
+    @Param({"false", "true"})
+    public boolean generated;
+
+    private Object classifier;
+    private Object cache;
+    private List<String> texts;
+    private List<Object> blocks;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        try (Scanner input = new Scanner(new File(Corpus.file(model)), StandardCharsets.UTF_8)) {
+            classifier = (Object) Api.LOAD_TEXT.invokeExact((Object) input);
+        }
+        if (generated && !(boolean) Api.GENERATE.invokeExact(classifier)) {
+            throw new IllegalStateException(model + " is too large to generate");
+        }
+        Corpus data = Corpus.load("test.csv");
+        texts = data.texts;
+        blocks = data.textBlocks();
+        cache = (Object) Api.NEW_CLASSIFICATION_CACHE.invokeExact(1024);
+    }
+
+    /** Classifies the next already tokenized document. */
+    @Benchmark
+    public Object classify() throws Throwable {
+        Object block = blocks.get(next);
+        next = (next + 1) % blocks.size();
+        return (Object) Api.CLASSIFY.invokeExact(classifier, block);
+    }
+
+    /** Classifies the raw text of the next document. */
+    @Benchmark
+    public Object classifyText() throws Throwable {
+        String text = texts.get(next);
+        next = (next + 1) % texts.size();
+        return (Object) Api.CLASSIFY_TEXT.invokeExact(classifier, (Object) text);
+    }
+
+    /**
+     * Classifies the raw text of the next document through a ClassificationCache. Every
+     * document is repeated, so after the first round this measures the cost of a hit.
+     */
+    @Benchmark
+    public Object classifyTextCached() throws Throwable {
+        String text = texts.get(next);
+        next = (next + 1) % texts.size();
+        return (Object) Api.CACHE_CLASSIFY.invokeExact(cache, classifier, (Object) text);
+    }
+
+    /** Tokenizes the raw text of the next document into a TextBlock, then classifies it. */
+    @Benchmark
+    public Object tokenizeAndClassify() throws Throwable {
+        String text = texts.get(next);
+        next = (next + 1) % texts.size();
+        Object block = (Object) Api.NEW_TEXT_BLOCK.invokeExact((Object) text);
+        return (Object) Api.CLASSIFY.invokeExact(classifier, block);
+    }
+
+    /** Classifies every already tokenized document in parallel. */
+    @Benchmark
+    public Object classifyAll() throws Throwable {
+        return (Object) Api.CLASSIFY_ALL.invokeExact(classifier, (Object) blocks);
+    }
+}
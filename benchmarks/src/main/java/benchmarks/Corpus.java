@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark inputs: the data files shipped in the repository root and synthetic corpora of any
+ * size. Corpus names are either a CSV file name ({@code "train.csv"}) or
+ * {@code "synthetic-<documents>"}.
+ */
+final class Corpus {
+    /** Raw text of every document. */
+    final List<String> texts;
+    /** Expected label of every document. */
+    final List<String> labels;
+
+    private Corpus(List<String> texts, List<String> labels) {
+        this.texts = texts;
+        this.labels = labels;
+    }
+
+    /** Loads the corpus with the given name. */
+    @SuppressWarnings("unchecked")
+    static Corpus load(String name) throws Throwable {
+        if (name.startsWith("synthetic-")) {
+            return synthetic(Integer.parseInt(name.substring("synthetic-".length())), 42);
+        }
+        List<String> texts = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (List<String> row : (List<List<String>>) (Object) Api.CSV_READ.invokeExact((Object) file(name))) {
+            labels.add(row.get(0));
+            texts.add(row.get(1));
+        }
+        return new Corpus(texts, labels);
+    }
+
+    /**
+     * Returns a corpus of short, SMS-sized documents whose words follow a Zipf-like
+     * distribution over a vocabulary that grows with the corpus, labelled spam or ham at random.
+     */
+    static Corpus synthetic(int documents, long seed) {
+        Random random = new Random(seed);
+        int vocabulary = Math.max(1000, documents / 2);
+        List<String> texts = new ArrayList<>(documents);
+        List<String> labels = new ArrayList<>(documents);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < documents; i++) {
+            text.setLength(0);
+            int length = 5 + random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                int word = (int) Math.pow(vocabulary, random.nextDouble()) - 1;
+                text.append('w').append(word).append(' ');
+            }
+            texts.add(text.toString());
+            labels.add(random.nextInt(4) == 0 ? "spam" : "ham");
+        }
+        return new Corpus(texts, labels);
+    }
+
+    /** Returns a TextBlock for every document. */
+    List<Object> textBlocks() throws Throwable {
+        List<Object> blocks = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            blocks.add((Object) Api.NEW_TEXT_BLOCK.invokeExact((Object) text));
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns the path of a data file from the repository root, whether the benchmarks are run
+     * from the root or from the benchmarks directory. The {@code data.dir} system property
+     * overrides where files are looked up.
+     */
+    static String file(String name) {
+        String dir = System.getProperty("data.dir");
+        if (dir == null) {
+            dir = new File(name).exists() ? "." : "..";
+        }
+        return new File(dir, name).getPath();
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Vector API training backend against the sparse merge of
+ * {@code TextBlock.findBiggestDifference}: finding the split word between two documents, and
+ * training a whole Classifier either way. The pairwise benchmarks compare documents whose
+ * projections are already cached, as training does for the document of every leaf; training
+ * includes building the kernel and every projection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class DenseKernelBenchmark {
+    @Param({"train.csv", "synthetic-10000"})
+    public String corpus;
+
+    @Param({"128", "512"})
+    public int hotWords;
+
+    private List<Object> blocks;
+    private List<String> labels;
+    private Object kernel;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Corpus data = Corpus.load(corpus);
+        blocks = data.textBlocks();
+        labels = data.labels;
+        kernel = (Object) Api.Dense.NEW_DENSE_KERNEL.invokeExact((Object) blocks, hotWords);
+    }
+
+    /** Finds the most differing word between the next two documents with a sparse merge. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object sparse() throws Throwable {
+        Object one = blocks.get(next);
+        next = (next + 1) % blocks.size();
+        return (Object) Api.FIND_BIGGEST_DIFFERENCE.invokeExact(one, blocks.get(next));
+    }
+
+    /** Finds the most differing word between the next two documents with the DenseKernel. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object dense() throws Throwable {
+        Object one = blocks.get(next);
+        next = (next + 1) % blocks.size();
+        return (Object) Api.Dense.FIND_BIGGEST_DIFFERENCE.invokeExact(kernel, one, blocks.get(next));
+    }
+
+    /** Trains a new Classifier on the whole corpus with the sparse merge. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object trainSparse() throws Throwable {
+        return (Object) Api.TRAIN.invokeExact((Object) blocks, (Object) labels);
+    }
+
+    /** Builds a new DenseKernel and trains a new Classifier on the whole corpus with it. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object trainDense() throws Throwable {
+        Object fresh = (Object) Api.Dense.NEW_DENSE_KERNEL.invokeExact((Object) blocks, hotWords);
+        return (Object) Api.Dense.TRAIN.invokeExact((Object) blocks, (Object) labels, fresh);
+    }
+}
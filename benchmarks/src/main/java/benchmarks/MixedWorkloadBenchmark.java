@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of classifying while the same model is being trained further. A model is trained
+ * on a synthetic corpus; in the {@code mixed} group one thread keeps updating it with documents
+ * of a second corpus while three threads classify documents of the first, and {@code readOnly}
+ * classifies the same way without updates. Use {@code -tg} to change the number of threads,
+ * e.g. {@code -tg 1,7} for one updater and seven readers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class MixedWorkloadBenchmark {
+    @State(Scope.Group)
+    public static class Model {
+        Object classifier;
+        List<Object> updates;
+        List<String> updateLabels;
+        int nextUpdate;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Throwable {
+            Corpus training = Corpus.synthetic(10000, 42);
+            classifier = (Object) Api.TRAIN.invokeExact((Object) training.textBlocks(),
+                                                        (Object) training.labels);
+            Corpus more = Corpus.synthetic(100000, 7);
+            updates = more.textBlocks();
+            updateLabels = more.labels;
+            nextUpdate = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Inputs {
+        List<Object> blocks;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            blocks = Corpus.synthetic(1000, 42).textBlocks();
+        }
+
+        Object next() {
+            Object block = blocks.get(next);
+            next = (next + 1) % blocks.size();
+            return block;
+        }
+    }
+
+    /** Trains the model on the next document of the second corpus. */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void update(Model model) throws Throwable {
+        int i = model.nextUpdate;
+        model.nextUpdate = (i + 1) % model.updates.size();
+        Api.UPDATE.invokeExact(model.classifier, model.updates.get(i),
+                               (Object) model.updateLabels.get(i));
+    }
+
+    /** Classifies the next document while the model is being updated. */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Object classify(Model model, Inputs inputs) throws Throwable {
+        return (Object) Api.CLASSIFY.invokeExact(model.classifier, inputs.next());
+    }
+
+    /** Classifies the next document while the model stays the same. */
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(3)
+    public Object classifyReadOnly(Model model, Inputs inputs) throws Throwable {
+        return (Object) Api.CLASSIFY.invokeExact(model.classifier, inputs.next());
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Saving and loading the models shipped in the repository root. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelIoBenchmark {
+    @Param({"simple.txt", "medium.txt", "large.txt"})
+    public String model;
+
+    private Object classifier;
+    private File binary;
+    private PrintStream discard;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        try (Scanner input = new Scanner(new File(Corpus.file(model)), StandardCharsets.UTF_8)) {
+            classifier = (Object) Api.LOAD_TEXT.invokeExact((Object) input);
+        }
+        binary = File.createTempFile("model", ".bin");
+        Api.SAVE_BINARY.invokeExact(classifier, (Object) binary.getPath());
+        discard = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        binary.delete();
+    }
+
+    /** Loads the model from its text file through Classifier(Scanner). */
+    @Benchmark
+    public Object loadText() throws Throwable {
+        try (Scanner input = new Scanner(new File(Corpus.file(model)), StandardCharsets.UTF_8)) {
+            return (Object) Api.LOAD_TEXT.invokeExact((Object) input);
+        }
+    }
+
+    /** Loads the model from a binary file through Classifier.loadBinary. */
+    @Benchmark
+    public Object loadBinary() throws Throwable {
+        return (Object) Api.LOAD_BINARY.invokeExact((Object) binary.getPath());
+    }
+
+    /** Writes the model in the text format. */
+    @Benchmark
+    public void saveText() throws Throwable {
+        Api.SAVE.invokeExact(classifier, (Object) discard);
+    }
+
+    /** Writes the model in the binary format. */
+    @Benchmark
+    public void saveBinary() throws Throwable {
+        Api.SAVE_BINARY.invokeExact(classifier, (Object) binary.getPath());
+    }
+}
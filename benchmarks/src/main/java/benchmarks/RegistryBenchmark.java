@@ -0,0 +1,104 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stress test of hot-swapping models in a ModelRegistry. In the {@code reloading} group, three
+ * threads classify test.csv through the registry while a fourth keeps loading and swapping in
+ * models, alternating between a text and a binary file; {@code steady} is the same without the
+ * reloads. Latencies are sampled, so the percentiles of the two {@code classify} results show
+ * whether scoring threads ever waited for a reload: their tails should match. RegistryStressTest
+ * in the classifier itself checks the same thing with assertions, along with every label.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistryBenchmark {
+    @State(Scope.Group)
+    public static class Registry {
+        Object registry;
+        String[] files;
+        int nextFile;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            Object classifier;
+            try (Scanner input = new Scanner(new File(Corpus.file("large.txt")), StandardCharsets.UTF_8)) {
+                classifier = (Object) Api.LOAD_TEXT.invokeExact((Object) input);
+            }
+            File binary = File.createTempFile("model", ".bin");
+            Api.SAVE_BINARY.invokeExact(classifier, (Object) binary.getPath());
+            files = new String[] {Corpus.file("large.txt"), binary.getPath()};
+            registry = (Object) Api.NEW_MODEL_REGISTRY.invokeExact(classifier, (Object) files[0]);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            new File(files[1]).delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Texts {
+        List<String> texts;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            texts = Corpus.load("test.csv").texts;
+        }
+
+        String next() {
+            String text = texts.get(next);
+            next = (next + 1) % texts.size();
+            return text;
+        }
+    }
+
+    /** Classifies the raw text of the next document while models are being swapped. */
+    @Benchmark
+    @Group("reloading")
+    @GroupThreads(3)
+    public Object classify(Registry registry, Texts texts) throws Throwable {
+        return (Object) Api.REGISTRY_CLASSIFY_TEXT.invokeExact(registry.registry, (Object) texts.next());
+    }
+
+    /** Loads the next model file and swaps it in. */
+    @Benchmark
+    @Group("reloading")
+    @GroupThreads(1)
+    public Object reload(Registry registry) throws Throwable {
+        String file = registry.files[registry.nextFile];
+        registry.nextFile ^= 1;
+        return (Object) Api.REGISTRY_LOAD.invokeExact(registry.registry, (Object) file);
+    }
+
+    /** Classifies the raw text of the next document while the model stays the same. */
+    @Benchmark
+    @Group("steady")
+    @GroupThreads(3)
+    public Object classifySteady(Registry registry, Texts texts) throws Throwable {
+        return (Object) Api.REGISTRY_CLASSIFY_TEXT.invokeExact(registry.registry, (Object) texts.next());
+    }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Tokenizing text into a TextBlock, and comparing two TextBlocks while training. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextBlockBenchmark {
+    @Param({"train.csv", "synthetic-10000"})
+    public String corpus;
+
+    private List<String> texts;
+    private List<Object> blocks;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Corpus data = Corpus.load(corpus);
+        texts = data.texts;
+        blocks = data.textBlocks();
+    }
+
+    /** Builds a TextBlock from the next document of the corpus. */
+    @Benchmark
+    public Object construct() throws Throwable {
+        String text = texts.get(next);
+        next = (next + 1) % texts.size();
+        return (Object) Api.NEW_TEXT_BLOCK.invokeExact((Object) text);
+    }
+
+    /** Finds the most differing word between the next two documents of the corpus. */
+    @Benchmark
+    public Object findBiggestDifference() throws Throwable {
+        Object one = blocks.get(next);
+        next = (next + 1) % blocks.size();
+        return (Object) Api.FIND_BIGGEST_DIFFERENCE.invokeExact(one, blocks.get(next));
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Training a Classifier from already tokenized documents. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class TrainBenchmark {
+    @Param({"train.csv", "synthetic-1000", "synthetic-10000", "synthetic-100000"})
+    public String corpus;
+
+    private List<Object> blocks;
+    private List<String> labels;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Corpus data = Corpus.load(corpus);
+        blocks = data.textBlocks();
+        labels = data.labels;
+    }
+
+    /** Trains a new Classifier on the whole corpus. */
+    @Benchmark
+    public Object train() throws Throwable {
+        return (Object) Api.TRAIN.invokeExact((Object) blocks, (Object) labels);
+    }
+}